@@ -0,0 +1,69 @@
+// k6 run load/products.js
+// k6 run -e BASE_URL=http://localhost:8802 -e CLIENTS=1000 -e PRODUCTS=1000 load/products.js
+import http from 'k6/http';
+import { check, sleep } from 'k6';
+
+const BASE_URL = __ENV.BASE_URL || 'http://localhost:8802';
+const CLIENTS = parseInt(__ENV.CLIENTS || '1000');
+const PRODUCTS = parseInt(__ENV.PRODUCTS || '1000');
+const JSON_HEADERS = { headers: { 'Content-Type': 'application/json' } };
+
+export const options = {
+    summaryTrendStats: ['avg', 'p(50)', 'p(95)', 'p(99)', 'max'],
+    scenarios: {
+        clients: {
+            executor: 'ramping-vus',
+            stages: [
+                { duration: '30s', target: CLIENTS },
+                { duration: '2m', target: CLIENTS },
+                { duration: '15s', target: 0 },
+            ],
+        },
+    },
+    thresholds: {
+        http_req_failed: ['rate<0.01'],
+        'http_req_duration{type:read}': ['p(95)<200'],
+        'http_req_duration{type:write}': ['p(95)<500'],
+    },
+};
+
+export function setup() {
+    const products = [];
+    for (let i = 0; i < PRODUCTS; i++) {
+        products.push(JSON.stringify({ name: `Товар ${i}`, price: 1 + (i % 500), quantity: 1000000 }));
+    }
+    const res = http.post(`${BASE_URL}/product/import`, products.join('\n'),
+        { headers: { 'Content-Type': 'application/x-ndjson' }, timeout: '5m' });
+    check(res, { 'products imported': (r) => r.status === 200 });
+
+    const page = http.get(`${BASE_URL}/product/all?limit=${PRODUCTS}&fields=id`).json('response');
+    return { ids: page.map((p) => p.id) };
+}
+
+export default function (data) {
+    const id = data.ids[Math.floor(Math.random() * data.ids.length)];
+    const roll = Math.random();
+    let res;
+    if (roll < 0.4) {
+        const minPrice = Math.floor(Math.random() * 400);
+        res = http.get(`${BASE_URL}/product/search?minPrice=${minPrice}&maxPrice=${minPrice + 50}&size=20`,
+            { tags: { type: 'read', name: 'search' } });
+    } else if (roll < 0.7) {
+        res = http.get(`${BASE_URL}/product/${id}`, { tags: { type: 'read', name: 'product' } });
+    } else if (roll < 0.85) {
+        res = http.get(`${BASE_URL}/product/all?limit=50&after=${id}`, { tags: { type: 'read', name: 'page' } });
+    } else {
+        res = http.post(`${BASE_URL}/product-sale/add`,
+            JSON.stringify({ documentName: 'load', product: { id: id }, quantity: 1, purchasePrice: 1 }),
+            Object.assign({ tags: { type: 'write', name: 'sale' } }, JSON_HEADERS));
+    }
+    check(res, { 'status is 2xx': (r) => r.status >= 200 && r.status < 300 });
+    sleep(Math.random());
+}
+
+// Connection wait as seen by the application: time spent in HikariCP getConnection and threads left waiting
+export function teardown() {
+    const metrics = http.get(`${BASE_URL}/actuator/prometheus`).body.split('\n')
+        .filter((line) => /^hikaricp_connections_(acquire_seconds_(max|sum|count)|pending|max)\{/.test(line));
+    console.log('\n' + metrics.join('\n'));
+}
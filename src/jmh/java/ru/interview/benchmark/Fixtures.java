@@ -0,0 +1,46 @@
+package ru.interview.benchmark;
+
+import ru.interview.entity.Product;
+import ru.interview.entity.ProductSale;
+
+import java.util.ArrayList;
+import java.util.List;
+
+final class Fixtures {
+
+    private Fixtures() {
+    }
+
+    static Product product(long id) {
+        Product product = new Product();
+        product.setId(id);
+        product.setName("Товар " + id);
+        product.setDescription("Описание товара " + id + " для проверки производительности");
+        product.setPrice(100.0 + id % 1000);
+        product.setQuantity((int) (id % 50));
+        product.setInStock(id % 50 > 0);
+        return product;
+    }
+
+    static List<Product> products(int count) {
+        List<Product> products = new ArrayList<>(count);
+        for (long id = 1; id <= count; id++) {
+            products.add(product(id));
+        }
+        return products;
+    }
+
+    static List<ProductSale> productSales(int count) {
+        List<ProductSale> productSales = new ArrayList<>(count);
+        for (long id = 1; id <= count; id++) {
+            ProductSale productSale = new ProductSale();
+            productSale.setId(id);
+            productSale.setDocumentName("Продажа " + id);
+            productSale.setProduct(product(id));
+            productSale.setQuantity(1);
+            productSale.setPurchasePrice(150.0);
+            productSales.add(productSale);
+        }
+        return productSales;
+    }
+}
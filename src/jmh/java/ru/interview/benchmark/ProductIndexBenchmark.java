@@ -0,0 +1,117 @@
+package ru.interview.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import ru.interview.Application;
+import ru.interview.dto.ProductView;
+import ru.interview.entity.Product;
+import ru.interview.repository.ProductRepository;
+import ru.interview.repository.ProductSpecifications;
+import ru.interview.search.ProductIndex;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the in-memory search index with the SQL query it replaces, both without the search cache.
+ * Like {@link ProductServiceBenchmark} it runs against H2 unless {@code -p database=postgres} is given.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Threads(4)
+public class ProductIndexBenchmark {
+
+    private static final int SEED_BATCH_SIZE = 1000;
+    private static final int PAGE_SIZE = 20;
+
+    @Param({"h2"})
+    private String database;
+
+    @Param({"10000"})
+    private int catalogSize;
+
+    private ConfigurableApplicationContext context;
+    private ProductRepository productRepository;
+    private ProductIndex productIndex;
+    private PageRequest firstPage;
+    private PageRequest deepPage;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        List<String> args = new ArrayList<>(List.of("--logging.level.root=WARN", "--app.search.index.enabled=true"));
+        if ("h2".equals(database)) {
+            args.addAll(List.of(
+                    "--spring.datasource.driver-class-name=org.h2.Driver",
+                    "--spring.datasource.url=jdbc:h2:mem:benchmark;DB_CLOSE_DELAY=-1",
+                    "--spring.datasource.username=sa",
+                    "--spring.datasource.password=",
+                    "--spring.jpa.hibernate.ddl-auto=create-drop"));
+        }
+        context = new SpringApplicationBuilder(Application.class)
+                .web(WebApplicationType.NONE)
+                .run(args.toArray(String[]::new));
+        productRepository = context.getBean(ProductRepository.class);
+        productIndex = context.getBean(ProductIndex.class);
+
+        List<Product> batch = new ArrayList<>(SEED_BATCH_SIZE);
+        for (int i = 0; i < catalogSize; i++) {
+            Product product = Fixtures.product(i);
+            product.setId(null);
+            batch.add(product);
+            if (batch.size() == SEED_BATCH_SIZE || i == catalogSize - 1) {
+                productRepository.saveAll(batch);
+                batch.clear();
+            }
+        }
+        // Seeded past the service, so no change events reached the index
+        productIndex.load();
+
+        firstPage = PageRequest.of(0, PAGE_SIZE, Sort.by("price", "id"));
+        deepPage = PageRequest.of(catalogSize * 4 / 5 / PAGE_SIZE, PAGE_SIZE, Sort.by("price", "id"));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Slice<ProductView> filteredIndex() {
+        return productIndex.search("Товар 1", 150.0, 900.0, true, null, firstPage, ProductView.FIELDS);
+    }
+
+    @Benchmark
+    public Slice<ProductView> filteredSql() {
+        return productRepository.findViewSlice(ProductSpecifications.byFilters("Товар 1", 150.0, 900.0, true),
+                ProductView.FIELDS, firstPage);
+    }
+
+    @Benchmark
+    public Slice<ProductView> deepPageIndex() {
+        return productIndex.search(null, null, null, null, null, deepPage, ProductView.FIELDS);
+    }
+
+    @Benchmark
+    public Slice<ProductView> deepPageSql() {
+        return productRepository.findViewSlice(null, ProductView.FIELDS, deepPage);
+    }
+
+    @Benchmark
+    public long countIndex() {
+        return productIndex.count("Товар 1", 150.0, 900.0, true);
+    }
+
+    @Benchmark
+    public long countSql() {
+        return productRepository.count(ProductSpecifications.byFilters("Товар 1", 150.0, 900.0, true));
+    }
+}
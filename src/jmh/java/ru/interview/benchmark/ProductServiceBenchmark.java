@@ -0,0 +1,138 @@
+package ru.interview.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import ru.interview.Application;
+import ru.interview.cache.ProductCache;
+import ru.interview.cache.ProductSearchCache;
+import ru.interview.dto.ProductView;
+import ru.interview.entity.Product;
+import ru.interview.entity.ProductSale;
+import ru.interview.repository.ProductRepository;
+import ru.interview.service.ProductSaleService;
+import ru.interview.service.ProductService;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs against an in-memory H2 by default. With {@code -p database=postgres} the datasource from
+ * application.yaml is used, it can be overridden with the SPRING_DATASOURCE_URL environment variable.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Threads(4)
+public class ProductServiceBenchmark {
+
+    private static final int SEED_BATCH_SIZE = 1000;
+
+    @Param({"h2"})
+    private String database;
+
+    @Param({"10000"})
+    private int catalogSize;
+
+    private ConfigurableApplicationContext context;
+    private ProductService productService;
+    private ProductSaleService productSaleService;
+    private ProductCache productCache;
+    private ProductSearchCache productSearchCache;
+    private List<Long> productIds;
+    private Long hotProductId;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        List<String> args = new ArrayList<>(List.of("--logging.level.root=WARN"));
+        if ("h2".equals(database)) {
+            args.addAll(List.of(
+                    "--spring.datasource.driver-class-name=org.h2.Driver",
+                    "--spring.datasource.url=jdbc:h2:mem:benchmark;DB_CLOSE_DELAY=-1",
+                    "--spring.datasource.username=sa",
+                    "--spring.datasource.password=",
+                    "--spring.jpa.hibernate.ddl-auto=create-drop"));
+        }
+        context = new SpringApplicationBuilder(Application.class)
+                .web(WebApplicationType.NONE)
+                .run(args.toArray(String[]::new));
+        productService = context.getBean(ProductService.class);
+        productSaleService = context.getBean(ProductSaleService.class);
+        productCache = context.getBean(ProductCache.class);
+        productSearchCache = context.getBean(ProductSearchCache.class);
+        seed(context.getBean(ProductRepository.class));
+    }
+
+    private void seed(ProductRepository productRepository) {
+        productIds = new ArrayList<>(catalogSize);
+        List<Product> batch = new ArrayList<>(SEED_BATCH_SIZE);
+        for (int i = 0; i < catalogSize; i++) {
+            Product product = Fixtures.product(i);
+            product.setId(null);
+            batch.add(product);
+            if (batch.size() == SEED_BATCH_SIZE || i == catalogSize - 1) {
+                productRepository.saveAll(batch).forEach(saved -> productIds.add(saved.getId()));
+                batch.clear();
+            }
+        }
+
+        Product hotProduct = Fixtures.product(0);
+        hotProduct.setId(null);
+        hotProduct.setQuantity(Integer.MAX_VALUE / 2);
+        hotProductId = productRepository.save(hotProduct).getId();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Product getProductById() {
+        return productService.getProductById(randomProductId());
+    }
+
+    @Benchmark
+    public Product getProductByIdUncached() {
+        Long id = randomProductId();
+        productCache.evict(id);
+        return productService.getProductById(id);
+    }
+
+    @Benchmark
+    public Slice<ProductView> searchProducts() {
+        return productService.searchProducts("Товар 1", 150.0, 900.0, true,
+                PageRequest.of(0, 20, Sort.by("price")), ProductView.FIELDS);
+    }
+
+    @Benchmark
+    public Slice<ProductView> searchProductsUncached() {
+        productSearchCache.invalidateAll();
+        return productService.searchProducts("Товар 1", 150.0, 900.0, true,
+                PageRequest.of(0, 20, Sort.by("price")), ProductView.FIELDS);
+    }
+
+    @Benchmark
+    public ProductSale addProductSale() {
+        Product product = new Product();
+        product.setId(hotProductId);
+        ProductSale productSale = new ProductSale();
+        productSale.setDocumentName("Продажа");
+        productSale.setProduct(product);
+        productSale.setQuantity(1);
+        productSale.setPurchasePrice(150.0);
+        return productSaleService.addProductSale(productSale);
+    }
+
+    private Long randomProductId() {
+        return productIds.get(ThreadLocalRandom.current().nextInt(productIds.size()));
+    }
+}
@@ -0,0 +1,48 @@
+package ru.interview.benchmark;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import ru.interview.entity.Product;
+import ru.interview.response.ResponseBuilder;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ResponseBuilderBenchmark {
+
+    @Param({"10", "1000"})
+    private int size;
+
+    private ObjectMapper objectMapper;
+    private List<Product> products;
+
+    @Setup
+    public void setUp() {
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        products = Fixtures.products(size);
+    }
+
+    @Benchmark
+    public ResponseEntity<?> build() {
+        return ResponseBuilder.build(HttpStatus.OK, products, "/products/all");
+    }
+
+    @Benchmark
+    public ResponseEntity<?> error() {
+        return ResponseBuilder.build(HttpStatus.NOT_FOUND, null, "/products/1", "Product with id 1 not found");
+    }
+
+    @Benchmark
+    public byte[] buildAndSerialize() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(ResponseBuilder.build(HttpStatus.OK, products, "/products/all").getBody());
+    }
+}
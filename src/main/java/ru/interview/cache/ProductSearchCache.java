@@ -0,0 +1,172 @@
+package ru.interview.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.util.unit.DataSize;
+import ru.interview.dto.ProductSearchCursor;
+import ru.interview.dto.ProductView;
+import ru.interview.event.ProductChangedEvent;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+@Component
+public class ProductSearchCache implements MeterBinder {
+
+    private static final int ENTRY_OVERHEAD_BYTES = 256;
+    private static final int PRODUCT_OVERHEAD_BYTES = 96;
+    private static final int MAX_TOTALS = 10_000;
+
+    private final Cache<Key, Versioned<Slice<ProductView>>> cache;
+    private final Cache<Key, Versioned<Long>> totals;
+    private final AtomicLong generation = new AtomicLong();
+
+    @Autowired
+    public ProductSearchCache(@Value("${app.cache.search.max-memory:32MB}") DataSize maxMemory,
+                              @Value("${app.cache.search.expire-after-write:1m}") Duration expireAfterWrite) {
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxMemory.toBytes())
+                .weigher(ProductSearchCache::weigh)
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .build();
+        this.totals = Caffeine.newBuilder()
+                .maximumSize(MAX_TOTALS)
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .build();
+    }
+
+    // The catalog version is read before loading, so a cached result reflects at least every change up to it.
+    // A result loaded at an older version is reloaded, which also drops it after writes made by other instances
+    public Slice<ProductView> get(Key key, long catalogVersion, Supplier<Slice<ProductView>> loader) {
+        return get(cache, key, catalogVersion, () -> {
+            Slice<ProductView> slice = loader.get();
+            return new SliceImpl<>(List.copyOf(slice.getContent()), slice.getPageable(), slice.hasNext());
+        });
+    }
+
+    // Totals only depend on the filters, so one count serves every page, sort and field set of a search
+    public long getTotal(Key key, long catalogVersion, Supplier<Long> loader) {
+        return get(totals, key.filters(), catalogVersion, loader);
+    }
+
+    private <V> V get(Cache<Key, Versioned<V>> cache, Key key, long catalogVersion, Supplier<V> loader) {
+        long loadedAt = generation.get();
+        Versioned<V> value = cache.get(key, k -> new Versioned<>(catalogVersion, loader.get()));
+        if (value.getVersion() < catalogVersion) {
+            value = new Versioned<>(catalogVersion, loader.get());
+            cache.put(key, value);
+        }
+        // A write committed while the query was running, the result may already be stale
+        if (generation.get() != loadedAt) {
+            cache.asMap().remove(key, value);
+        }
+        return value.getValue();
+    }
+
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        cache.invalidateAll();
+        totals.invalidateAll();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProductChanged(ProductChangedEvent event) {
+        invalidateAll();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, cache, "productSearch");
+        CaffeineCacheMetrics.monitor(registry, totals, "productSearchTotal");
+    }
+
+    public Map<String, Object> stats() {
+        CacheStats stats = cache.stats();
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("size", cache.estimatedSize());
+        map.put("hits", stats.hitCount());
+        map.put("misses", stats.missCount());
+        map.put("hitRate", stats.hitRate());
+        map.put("evictions", stats.evictionCount());
+        return map;
+    }
+
+    private static int weigh(Key key, Versioned<Slice<ProductView>> products) {
+        long bytes = ENTRY_OVERHEAD_BYTES + length(key.getName()) * 2L;
+        for (ProductView product : products.getValue()) {
+            bytes += PRODUCT_OVERHEAD_BYTES + (length(product.getName()) + length(product.getDescription())) * 2L;
+        }
+        return (int) Math.min(bytes, Integer.MAX_VALUE);
+    }
+
+    private static int length(String value) {
+        return value == null ? 0 : value.length();
+    }
+
+    @Getter
+    @AllArgsConstructor(access = AccessLevel.PRIVATE)
+    private static class Versioned<V> {
+        private final long version;
+        private final V value;
+    }
+
+    @Getter
+    @EqualsAndHashCode
+    @AllArgsConstructor(access = AccessLevel.PRIVATE)
+    public static class Key {
+        private final String name;
+        private final Double minPrice;
+        private final Double maxPrice;
+        private final Boolean inStock;
+        private final int page;
+        private final int size;
+        private final String sort;
+        private final List<String> fields;
+        private final String after;
+
+        public static Key of(String name, Double minPrice, Double maxPrice, Boolean inStock, Pageable pageable,
+                             boolean byRelevance, List<String> fields) {
+            return of(name, minPrice, maxPrice, inStock, null, pageable, byRelevance, fields);
+        }
+
+        public static Key of(String name, Double minPrice, Double maxPrice, Boolean inStock, ProductSearchCursor after,
+                             Pageable pageable, boolean byRelevance, List<String> fields) {
+            return new Key(
+                    name == null || name.isEmpty() ? null : name.toLowerCase(Locale.ROOT),
+                    minPrice,
+                    maxPrice,
+                    inStock,
+                    pageable == null ? -1 : pageable.getPageNumber(),
+                    pageable == null ? -1 : pageable.getPageSize(),
+                    byRelevance ? "relevance" : pageable == null ? "" : pageable.getSort().toString(),
+                    List.copyOf(fields),
+                    after == null ? null : after.encode());
+        }
+
+        Key filters() {
+            return new Key(name, minPrice, maxPrice, inStock, -1, -1, "", List.of(), null);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package ru.interview.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import ru.interview.datasource.ReplicaRoutingDataSource;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Without app.datasource.replicas the single auto-configured data source is used as before
+@Configuration
+@ConditionalOnProperty("app.datasource.replicas")
+public class DataSourceConfig {
+
+    @Bean
+    public ReplicaRoutingDataSource replicaRoutingDataSource(
+            DataSourceProperties properties,
+            Environment environment,
+            @Value("${app.datasource.replicas}") List<String> replicaUrls,
+            @Value("${app.datasource.replica-check-interval:5s}") Duration checkInterval,
+            @Value("${app.datasource.replica-timeout:2s}") Duration timeout) {
+        HikariDataSource primary = pool(properties, environment, "primary", properties.determineUrl());
+
+        Map<String, DataSource> replicas = new LinkedHashMap<>();
+        for (int i = 0; i < replicaUrls.size(); i++) {
+            HikariDataSource replica = pool(properties, environment, "replica-" + (i + 1), replicaUrls.get(i));
+            replica.setReadOnly(true);
+            // A replica that is down must not hold up startup or a request for the whole primary timeout
+            replica.setInitializationFailTimeout(-1);
+            replica.setConnectionTimeout(timeout.toMillis());
+            replicas.put(replica.getPoolName(), replica);
+        }
+        return new ReplicaRoutingDataSource(primary, replicas, checkInterval, timeout);
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(ReplicaRoutingDataSource replicaRoutingDataSource) {
+        return new LazyConnectionDataSourceProxy(replicaRoutingDataSource);
+    }
+
+    // The pools are not beans, so Spring Boot does not publish hikaricp_* metrics for them by itself
+    @Bean
+    public MeterBinder replicaRoutingDataSourceMetrics(ReplicaRoutingDataSource replicaRoutingDataSource) {
+        return registry -> replicaRoutingDataSource.getDataSources().stream()
+                .filter(HikariDataSource.class::isInstance)
+                .forEach(dataSource -> ((HikariDataSource) dataSource).setMetricRegistry(registry));
+    }
+
+    private static HikariDataSource pool(DataSourceProperties properties, Environment environment, String name, String url) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder()
+                .type(HikariDataSource.class)
+                .url(url)
+                .build();
+        Binder.get(environment).bind("spring.datasource.hikari", Bindable.ofInstance(dataSource));
+        dataSource.setPoolName(name);
+        return dataSource;
+    }
+}
@@ -0,0 +1,86 @@
+package ru.interview.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.interview.search.Trigrams;
+
+import javax.annotation.PostConstruct;
+import javax.sql.DataSource;
+
+@Component
+@DependsOn("entityManagerFactory")
+public class SchemaInitializer {
+
+    private static final Logger log = LoggerFactory.getLogger(SchemaInitializer.class);
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    public SchemaInitializer(DataSource dataSource) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    @PostConstruct
+    public void initialize() {
+        String database = jdbcTemplate.execute((ConnectionCallback<String>) connection ->
+                connection.getMetaData().getDatabaseProductName());
+        if ("PostgreSQL".equals(database)) {
+            initializePostgres();
+        } else if ("H2".equals(database)) {
+            jdbcTemplate.execute("CREATE ALIAS IF NOT EXISTS SIMILARITY FOR \"" + Trigrams.class.getName() + ".similarity\"");
+        }
+    }
+
+    private void initializePostgres() {
+        try {
+            jdbcTemplate.execute("CREATE EXTENSION IF NOT EXISTS pg_trgm");
+            jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS product_name_trgm_idx " +
+                    "ON product USING gin (lower(name) gin_trgm_ops)");
+        } catch (DataAccessException e) {
+            log.warn("Could not create trigram index for product names, name search will fall back to a scan", e);
+        }
+        // Replaced by the (price, id) indexes that search cursors seek on
+        jdbcTemplate.execute("DROP INDEX IF EXISTS product_price_idx");
+        jdbcTemplate.execute("DROP INDEX IF EXISTS product_in_stock_price_idx");
+        alignSequence("product_seq", "product");
+        alignSequence("product_sale_seq", "product_sale");
+        alignSequence("product_supply_seq", "product_supply");
+        backfillQuantities();
+        backfillSaleRollups();
+    }
+
+    // Ids used to come from identity columns, so the pooled sequences must start above the existing rows
+    private void alignSequence(String sequence, String table) {
+        jdbcTemplate.queryForObject("SELECT setval('" + sequence + "', GREATEST(" +
+                "(SELECT last_value FROM " + sequence + "), " +
+                "(SELECT COALESCE(MAX(id), 0) + 50 FROM " + table + ")))", Long.class);
+    }
+
+    // Products created before the stock ledger have no quantity, derive it from their documents once
+    private void backfillQuantities() {
+        jdbcTemplate.update("UPDATE product p SET quantity = GREATEST(0, " +
+                "COALESCE((SELECT SUM(quantity) FROM product_supply WHERE product_id = p.id), 0) - " +
+                "COALESCE((SELECT SUM(quantity) FROM product_sale WHERE product_id = p.id), 0)) " +
+                "WHERE p.quantity IS NULL");
+        jdbcTemplate.update("UPDATE product SET in_stock = (quantity > 0) WHERE in_stock IS DISTINCT FROM (quantity > 0)");
+    }
+
+    // The rollup tables are built from the sales once when they are still empty, sales recorded
+    // before they had a timestamp keep no date and go to the undated bucket
+    private void backfillSaleRollups() {
+        jdbcTemplate.update("INSERT INTO product_sale_daily (product_id, sale_date, units, revenue) " +
+                "SELECT product_id, CAST(sold_at AS date), SUM(quantity), SUM(quantity * COALESCE(purchase_price, 0)) " +
+                "FROM product_sale WHERE sold_at IS NOT NULL AND NOT EXISTS (SELECT 1 FROM product_sale_daily) " +
+                "GROUP BY product_id, CAST(sold_at AS date)");
+        jdbcTemplate.update("INSERT INTO product_sale_undated (product_id, units, revenue) " +
+                "SELECT product_id, SUM(quantity), SUM(quantity * COALESCE(purchase_price, 0)) " +
+                "FROM product_sale WHERE sold_at IS NULL AND NOT EXISTS (SELECT 1 FROM product_sale_undated) " +
+                "GROUP BY product_id");
+    }
+}
@@ -0,0 +1,41 @@
+package ru.interview.controller;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import ru.interview.cache.ProductCache;
+import ru.interview.cache.ProductSearchCache;
+import ru.interview.idempotency.IdempotencyFilter;
+import ru.interview.response.ResponseBuilder;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@Controller
+@RequestMapping("/cache")
+public class CacheController {
+
+    private final ProductCache productCache;
+    private final ProductSearchCache productSearchCache;
+    private final IdempotencyFilter idempotencyFilter;
+
+    @Autowired
+    public CacheController(ProductCache productCache, ProductSearchCache productSearchCache,
+                           IdempotencyFilter idempotencyFilter) {
+        this.productCache = productCache;
+        this.productSearchCache = productSearchCache;
+        this.idempotencyFilter = idempotencyFilter;
+    }
+
+    @GetMapping("/stats")
+    public ResponseEntity<?> getCacheStats(HttpServletRequest request) {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("product", productCache.stats());
+        stats.put("search", productSearchCache.stats());
+        stats.put("idempotency", idempotencyFilter.stats());
+        return ResponseBuilder.ok(stats, request.getRequestURI());
+    }
+}
@@ -0,0 +1,96 @@
+package ru.interview.controller;
+
+import org.apache.coyote.BadRequestException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.context.request.async.DeferredResult;
+import ru.interview.entity.ChangeEvent;
+import ru.interview.response.ResponseBuilder;
+import ru.interview.service.ChangeFeedService;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+@Controller
+@RequestMapping("/changes")
+public class ChangeFeedController {
+
+    private static final int MAX_PAGE_LIMIT = 1000;
+    private static final int MAX_WAIT_SECONDS = 60;
+
+    private final ChangeFeedService changeFeedService;
+
+    @Autowired
+    public ChangeFeedController(ChangeFeedService changeFeedService) {
+        this.changeFeedService = changeFeedService;
+    }
+
+    // Long poll: with wait > 0 an empty read is parked until a matching change past the offset is sequenced or
+    // the wait runs out. The cursor is always the offset to pass as 'after' next time, even when nothing came back
+    @GetMapping
+    public DeferredResult<ResponseEntity<?>> getChanges(@RequestParam(defaultValue = "0") long after,
+                                                        @RequestParam(defaultValue = "100") int limit,
+                                                        @RequestParam(defaultValue = "0") int wait,
+                                                        @RequestParam(required = false) String entity,
+                                                        HttpServletRequest request) {
+        String path = request.getRequestURI();
+        DeferredResult<ResponseEntity<?>> result = new DeferredResult<>(wait * 1000L);
+        if (limit < 1 || limit > MAX_PAGE_LIMIT) {
+            result.setResult(ResponseBuilder.error(HttpStatus.BAD_REQUEST, new BadRequestException(
+                    "Limit must be between 1 and " + MAX_PAGE_LIMIT + ". The current value is '" + limit + "'."), path));
+            return result;
+        }
+        if (wait < 0 || wait > MAX_WAIT_SECONDS) {
+            result.setResult(ResponseBuilder.error(HttpStatus.BAD_REQUEST, new BadRequestException(
+                    "Wait must be between 0 and " + MAX_WAIT_SECONDS + " seconds. The current value is '" + wait + "'."), path));
+            return result;
+        }
+
+        List<ChangeEvent> events = changeFeedService.getChangesAfter(after, entity, limit);
+        if (!events.isEmpty() || wait == 0) {
+            result.setResult(changes(events, after, limit, path));
+            return result;
+        }
+        AtomicReference<Runnable> cancel = new AtomicReference<>();
+        awaitChanges(result, cancel, after, after, entity, limit, path);
+        result.onCompletion(() -> cancel.get().run());
+        result.onTimeout(() -> result.setResult(changes(List.of(), after, limit, path)));
+        return result;
+    }
+
+    // A change of another entity also wakes a filtered poll, which then keeps waiting past the position it has
+    // checked instead of returning an empty page that the client would request again right away
+    private void awaitChanges(DeferredResult<ResponseEntity<?>> result, AtomicReference<Runnable> cancel,
+                              long after, long checked, String entity, int limit, String path) {
+        cancel.set(changeFeedService.onChangesAfter(checked, () -> {
+            if (result.isSetOrExpired()) {
+                return;
+            }
+            long position = changeFeedService.getPosition();
+            List<ChangeEvent> events = changeFeedService.getChangesAfterOnPrimary(after, entity, limit);
+            if (events.isEmpty()) {
+                awaitChanges(result, cancel, after, position, entity, limit, path);
+            } else {
+                result.setResult(changes(events, after, limit, path));
+            }
+        }));
+        // Completed while registering, the completion callback may have cancelled the previous registration
+        if (result.isSetOrExpired()) {
+            cancel.get().run();
+        }
+    }
+
+    private static ResponseEntity<?> changes(List<ChangeEvent> events, long after, int limit, String path) {
+        long cursor = events.isEmpty() ? after : events.get(events.size() - 1).getPosition();
+        return ResponseBuilder.slice(new SliceImpl<>(events, PageRequest.of(0, limit), events.size() == limit),
+                cursor, null, path);
+    }
+}
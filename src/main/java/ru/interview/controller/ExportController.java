@@ -0,0 +1,80 @@
+package ru.interview.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.interview.dto.ProductSaleView;
+import ru.interview.dto.ProductSupplyView;
+import ru.interview.dto.ProductView;
+import ru.interview.export.ExportBuilder;
+import ru.interview.export.ExportColumns;
+import ru.interview.export.ExportFormat;
+import ru.interview.service.ProductSaleService;
+import ru.interview.service.ProductService;
+import ru.interview.service.ProductSupplyService;
+
+import java.util.List;
+
+@Controller
+@RequestMapping("/export")
+public class ExportController {
+
+    private final ProductService productService;
+    private final ProductSaleService productSaleService;
+    private final ProductSupplyService productSupplyService;
+    private final ObjectMapper objectMapper;
+
+    @Autowired
+    public ExportController(ProductService productService,
+                            ProductSaleService productSaleService,
+                            ProductSupplyService productSupplyService,
+                            ObjectMapper objectMapper) {
+        this.productService = productService;
+        this.productSaleService = productSaleService;
+        this.productSupplyService = productSupplyService;
+        this.objectMapper = objectMapper;
+    }
+
+    @GetMapping("/products")
+    public ResponseEntity<StreamingResponseBody> exportProducts(@RequestParam(defaultValue = "csv") String format,
+                                                                @RequestParam(required = false) String name,
+                                                                @RequestParam(required = false) Double minPrice,
+                                                                @RequestParam(required = false) Double maxPrice,
+                                                                @RequestParam(required = false) Double price,
+                                                                @RequestParam(required = false) Boolean inStock,
+                                                                @RequestParam(required = false) String fields,
+                                                                @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        ExportFormat exportFormat = ExportFormat.of(format);
+        List<String> selectedFields = ProductView.fields(fields);
+        Double from = price != null ? price : minPrice;
+        Double to = price != null ? price : maxPrice;
+        return ExportBuilder.<ProductView>export(exportFormat, "products", acceptEncoding,
+                ExportColumns.products(selectedFields), objectMapper,
+                consumer -> productService.forEachProduct(name, from, to, inStock, selectedFields, consumer));
+    }
+
+    @GetMapping("/product-sales")
+    public ResponseEntity<StreamingResponseBody> exportProductSales(@RequestParam(defaultValue = "csv") String format,
+                                                                    @RequestParam(defaultValue = "false") boolean productIdOnly,
+                                                                    @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        return ExportBuilder.<ProductSaleView>export(ExportFormat.of(format), "product-sales", acceptEncoding,
+                ExportColumns.productSales(productIdOnly), objectMapper,
+                consumer -> productSaleService.forEachProductSale(productIdOnly, consumer));
+    }
+
+    @GetMapping("/product-supplies")
+    public ResponseEntity<StreamingResponseBody> exportProductSupplies(@RequestParam(defaultValue = "csv") String format,
+                                                                       @RequestParam(defaultValue = "false") boolean productIdOnly,
+                                                                       @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        return ExportBuilder.<ProductSupplyView>export(ExportFormat.of(format), "product-supplies", acceptEncoding,
+                ExportColumns.productSupplies(productIdOnly), objectMapper,
+                consumer -> productSupplyService.forEachProductSupply(productIdOnly, consumer));
+    }
+}
@@ -1,10 +1,14 @@
 package ru.interview.controller;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import ru.interview.exception.ProductNotFoundException;
 import ru.interview.exception.ProductValidationException;
+import ru.interview.metrics.StatementCountInterceptor;
 import ru.interview.response.ResponseBuilder;
 
 import javax.servlet.http.HttpServletRequest;
@@ -12,8 +16,16 @@ import javax.servlet.http.HttpServletRequest;
 @RestControllerAdvice
 public class GlobalExceptionHandler {
 
+    private final MeterRegistry meterRegistry;
+
+    @Autowired
+    public GlobalExceptionHandler(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
     @ExceptionHandler(ProductValidationException.class)
     public ResponseEntity<?> handleProductValidationException(ProductValidationException exception, HttpServletRequest request) {
+        meterRegistry.counter("app.validation.failures", "uri", StatementCountInterceptor.uri(request)).increment();
         return ResponseBuilder.error(HttpStatus.BAD_REQUEST, exception, request.getRequestURI());
     }
 
@@ -21,4 +33,11 @@ public class GlobalExceptionHandler {
     public ResponseEntity<?> handleProductNotFoundException(ProductNotFoundException exception, HttpServletRequest request) {
         return ResponseBuilder.error(HttpStatus.NOT_FOUND, exception, request.getRequestURI());
     }
+
+    @ExceptionHandler(OptimisticLockingFailureException.class)
+    public ResponseEntity<?> handleOptimisticLockingFailureException(OptimisticLockingFailureException exception, HttpServletRequest request) {
+        return ResponseBuilder.error(HttpStatus.CONFLICT,
+                new IllegalStateException("The product was changed by another request, read it again and retry"),
+                request.getRequestURI());
+    }
 }
@@ -1,41 +1,91 @@
 package ru.interview.controller;
 
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.apache.coyote.BadRequestException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.domain.Sort;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.interview.dto.ProductImportResult;
+import ru.interview.dto.ProductSearchCursor;
+import ru.interview.dto.ProductSearchPage;
+import ru.interview.dto.ProductView;
 import ru.interview.entity.Product;
 import ru.interview.response.ResponseBuilder;
 import ru.interview.service.ProductService;
 
 import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 
 @Controller
 @RequestMapping("/product")
 public class ProductController {
 
+    private static final int MAX_PAGE_LIMIT = 1000;
+
     private final ProductService productService;
+    private final ObjectMapper objectMapper;
+    private final CacheControl cacheControl;
 
     @Autowired
-    public ProductController(ProductService productService) {
+    public ProductController(ProductService productService, ObjectMapper objectMapper,
+                             @Value("${app.http-cache.max-age:0s}") Duration maxAge) {
         this.productService = productService;
+        this.objectMapper = objectMapper;
+        this.cacheControl = CacheControl.maxAge(maxAge).cachePublic().mustRevalidate();
     }
 
     @GetMapping("/all")
-    public ResponseEntity<?> getAllProducts(HttpServletRequest request) {
-        List<Product> products = productService.getAllProducts();
-        return ResponseBuilder.ok(products, request.getRequestURI());
+    public ResponseEntity<StreamingResponseBody> getAllProducts(@RequestParam(required = false) String fields) {
+        List<String> selectedFields = ProductView.fields(fields);
+        return ResponseBuilder.<ProductView>stream(objectMapper,
+                consumer -> productService.forEachProduct(selectedFields, consumer));
+    }
+
+    @GetMapping(value = "/all", params = "limit")
+    public ResponseEntity<?> getProductsPage(@RequestParam(required = false) Long after,
+                                             @RequestParam int limit,
+                                             @RequestParam(required = false) String fields,
+                                             HttpServletRequest request,
+                                             WebRequest webRequest) {
+        if (limit < 1 || limit > MAX_PAGE_LIMIT) {
+            return ResponseBuilder.error(HttpStatus.BAD_REQUEST, new BadRequestException(
+                            "Limit must be between 1 and " + MAX_PAGE_LIMIT + ". The current value is '" + limit + "'."),
+                    request.getRequestURI());
+        }
+        List<String> selectedFields = ProductView.fields(fields);
+        if (!selectedFields.contains("id")) {
+            selectedFields = new ArrayList<>(selectedFields);
+            selectedFields.add(0, "id");
+        }
+        String eTag = catalogETag();
+        if (webRequest.checkNotModified(eTag)) {
+            return ResponseBuilder.notModified(cacheControl);
+        }
+        List<ProductView> products = productService.getProductsAfter(after, limit, selectedFields);
+        return ResponseBuilder.cached(
+                ResponseBuilder.cursor(products, limit, ProductView::getId, request.getRequestURI()), eTag, cacheControl);
     }
 
     @GetMapping("/{id}")
     public ResponseEntity<?> getProductById(@PathVariable Long id, HttpServletRequest request) {
         Product product = productService.getProductById(id);
-        return ResponseBuilder.ok(product, request.getRequestURI());
+        String eTag = "\"" + product.getVersion() + "\"";
+        return ResponseBuilder.cached(ResponseBuilder.ok(product, request.getRequestURI()), eTag, cacheControl);
     }
 
     @PostMapping("/add")
@@ -44,6 +94,14 @@ public class ProductController {
         return ResponseBuilder.build(HttpStatus.CREATED, product, request.getRequestURI());
     }
 
+    @PostMapping(value = "/import", consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public ResponseEntity<?> importProducts(HttpServletRequest request) throws IOException {
+        try (MappingIterator<Product> products = objectMapper.readerFor(Product.class).readValues(request.getInputStream())) {
+            ProductImportResult result = productService.importProducts(products);
+            return ResponseBuilder.ok(result, request.getRequestURI());
+        }
+    }
+
     @PutMapping("/update")
     public ResponseEntity<?> updateProduct(@RequestBody Product product, HttpServletRequest request) {
         product = productService.updateProduct(product);
@@ -65,11 +123,26 @@ public class ProductController {
                                             @RequestParam(defaultValue = "0") int page,
                                             @RequestParam(defaultValue = "0") int size,
                                             @RequestParam(defaultValue = "name") String sortBy,
-                                            HttpServletRequest request) {
-
-        if (!sortBy.equalsIgnoreCase("name") && !sortBy.equalsIgnoreCase("price")) {
+                                            @RequestParam(required = false) String cursor,
+                                            @RequestParam(required = false) String fields,
+                                            @RequestParam(defaultValue = "false") boolean withTotal,
+                                            HttpServletRequest request,
+                                            WebRequest webRequest) {
+
+        boolean byRelevance = sortBy.equalsIgnoreCase("relevance");
+        if (!sortBy.equalsIgnoreCase("name") && !sortBy.equalsIgnoreCase("price") && !byRelevance) {
             return ResponseBuilder.error(HttpStatus.BAD_REQUEST, new BadRequestException(
-                            "Sorting can only be done by 'name' or 'price'. The current value is '" + sortBy + "'."),
+                            "Sorting can only be done by 'name', 'price' or 'relevance'. The current value is '" + sortBy + "'."),
+                    request.getRequestURI());
+        }
+        if (byRelevance && (name == null || name.isBlank())) {
+            return ResponseBuilder.error(HttpStatus.BAD_REQUEST, new BadRequestException(
+                            "Sorting by 'relevance' requires the 'name' parameter."),
+                    request.getRequestURI());
+        }
+        if (cursor != null && (byRelevance || size < 1)) {
+            return ResponseBuilder.error(HttpStatus.BAD_REQUEST, new BadRequestException(
+                            "The 'cursor' parameter requires a page 'size' and sorting by 'name' or 'price'."),
                     request.getRequestURI());
         }
 
@@ -78,10 +151,42 @@ public class ProductController {
             maxPrice = price;
         }
 
-        List<Product> products = productService.searchProducts(
-                name, minPrice, maxPrice, inStock, size > 0 ? PageRequest.of(page, size, Sort.by(sortBy)) : null);
+        List<String> selectedFields = ProductView.fields(fields);
+        String sortKey = sortBy.toLowerCase(Locale.ROOT);
+        // Sorted pages hand out a cursor, which is built from the sort value and id of the last product
+        boolean keyset = !byRelevance && size > 0;
+        if (keyset && !selectedFields.containsAll(List.of("id", sortKey))) {
+            selectedFields = new ArrayList<>(selectedFields);
+            if (!selectedFields.contains("id")) selectedFields.add(0, "id");
+            if (!selectedFields.contains(sortKey)) selectedFields.add(sortKey);
+        }
+        ProductSearchCursor after = cursor == null ? null : ProductSearchCursor.decode(cursor, sortKey);
+
+        String eTag = catalogETag();
+        if (webRequest.checkNotModified(eTag)) {
+            return ResponseBuilder.notModified(cacheControl);
+        }
+        Slice<ProductView> products;
+        String next = null;
+        if (byRelevance) {
+            products = productService.searchProductsByRelevance(
+                    name, minPrice, maxPrice, inStock, size > 0 ? PageRequest.of(page, size) : null, selectedFields);
+        } else {
+            ProductSearchPage result = productService.searchProducts(name, minPrice, maxPrice, inStock, after,
+                    size > 0 ? PageRequest.of(after == null ? page : 0, size, Sort.by(sortKey, "id")) : null, selectedFields);
+            products = result.getProducts();
+            next = result.getNext() == null ? null : result.getNext().encode();
+        }
+
+        Long total = withTotal ? productService.countProducts(name, minPrice, maxPrice, inStock) : null;
+
+        return ResponseBuilder.cached(ResponseBuilder.slice(products, next, total, request.getRequestURI()), eTag, cacheControl);
+    }
 
-        return ResponseBuilder.ok(products, request.getRequestURI());
+    // Lists and searches are tagged with the catalog version read before the query. The service only serves data
+    // that reflects at least that version, so a tag never claims newer data than the body it was sent with
+    private String catalogETag() {
+        return "\"" + productService.getCatalogVersion() + "\"";
     }
 
 
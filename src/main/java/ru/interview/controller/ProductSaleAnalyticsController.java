@@ -0,0 +1,66 @@
+package ru.interview.controller;
+
+import org.apache.coyote.BadRequestException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import ru.interview.response.ResponseBuilder;
+import ru.interview.service.ProductSaleAnalyticsService;
+
+import javax.servlet.http.HttpServletRequest;
+import java.time.LocalDate;
+
+@Controller
+@RequestMapping("/product-sale/analytics")
+public class ProductSaleAnalyticsController {
+
+    private static final int MAX_PAGE_LIMIT = 1000;
+
+    private final ProductSaleAnalyticsService productSaleAnalyticsService;
+
+    @Autowired
+    public ProductSaleAnalyticsController(ProductSaleAnalyticsService productSaleAnalyticsService) {
+        this.productSaleAnalyticsService = productSaleAnalyticsService;
+    }
+
+    @GetMapping("/totals")
+    public ResponseEntity<?> getTotals(@RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                       @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+                                       @RequestParam(defaultValue = "0") int page,
+                                       @RequestParam(defaultValue = "100") int size,
+                                       HttpServletRequest request) {
+        if (page < 0 || size < 1 || size > MAX_PAGE_LIMIT) {
+            return ResponseBuilder.error(HttpStatus.BAD_REQUEST, new BadRequestException(
+                            "Page must not be negative and size must be between 1 and " + MAX_PAGE_LIMIT + "."),
+                    request.getRequestURI());
+        }
+        return ResponseBuilder.ok(productSaleAnalyticsService.getTotals(from, to, page, size), request.getRequestURI());
+    }
+
+    @GetMapping("/top")
+    public ResponseEntity<?> getTopSellers(@RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                           @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+                                           @RequestParam(defaultValue = "10") int limit,
+                                           @RequestParam(defaultValue = "revenue") String by,
+                                           HttpServletRequest request) {
+        if (limit < 1 || limit > MAX_PAGE_LIMIT) {
+            return ResponseBuilder.error(HttpStatus.BAD_REQUEST, new BadRequestException(
+                            "Limit must be between 1 and " + MAX_PAGE_LIMIT + ". The current value is '" + limit + "'."),
+                    request.getRequestURI());
+        }
+        return ResponseBuilder.ok(productSaleAnalyticsService.getTopSellers(from, to, limit, by), request.getRequestURI());
+    }
+
+    @GetMapping("/daily")
+    public ResponseEntity<?> getDailySales(@RequestParam(required = false) Long productId,
+                                           @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                           @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+                                           HttpServletRequest request) {
+        return ResponseBuilder.ok(productSaleAnalyticsService.getDailySales(productId, from, to), request.getRequestURI());
+    }
+}
@@ -1,10 +1,14 @@
 package ru.interview.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.coyote.BadRequestException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.interview.dto.ProductSaleView;
 import ru.interview.entity.ProductSale;
 import ru.interview.response.ResponseBuilder;
 import ru.interview.service.ProductSaleService;
@@ -16,17 +20,35 @@ import java.util.List;
 @RequestMapping("/product-sale")
 public class ProductSaleController {
 
+    private static final int MAX_PAGE_LIMIT = 1000;
+
     private final ProductSaleService productSaleService;
+    private final ObjectMapper objectMapper;
 
     @Autowired
-    public ProductSaleController(ProductSaleService productSaleService) {
+    public ProductSaleController(ProductSaleService productSaleService, ObjectMapper objectMapper) {
         this.productSaleService = productSaleService;
+        this.objectMapper = objectMapper;
     }
 
     @GetMapping("/all")
-    public ResponseEntity<?> getAllProductSales(HttpServletRequest request) {
-        List<ProductSale> productSales = productSaleService.getAllProductSales();
-        return ResponseBuilder.ok(productSales, request.getRequestURI());
+    public ResponseEntity<StreamingResponseBody> getAllProductSales(@RequestParam(defaultValue = "false") boolean productIdOnly) {
+        return ResponseBuilder.<ProductSaleView>stream(objectMapper,
+                consumer -> productSaleService.forEachProductSale(productIdOnly, consumer));
+    }
+
+    @GetMapping(value = "/all", params = "limit")
+    public ResponseEntity<?> getProductSalesPage(@RequestParam(required = false) Long after,
+                                                 @RequestParam int limit,
+                                                 @RequestParam(defaultValue = "false") boolean productIdOnly,
+                                                 HttpServletRequest request) {
+        if (limit < 1 || limit > MAX_PAGE_LIMIT) {
+            return ResponseBuilder.error(HttpStatus.BAD_REQUEST, new BadRequestException(
+                            "Limit must be between 1 and " + MAX_PAGE_LIMIT + ". The current value is '" + limit + "'."),
+                    request.getRequestURI());
+        }
+        List<ProductSaleView> productSales = productSaleService.getProductSalesAfter(after, limit, productIdOnly);
+        return ResponseBuilder.cursor(productSales, limit, ProductSaleView::getId, request.getRequestURI());
     }
 
     @GetMapping("/{id}")
@@ -41,6 +63,12 @@ public class ProductSaleController {
         return ResponseBuilder.build(HttpStatus.CREATED, productSale, request.getRequestURI());
     }
 
+    @PostMapping("/batch")
+    public ResponseEntity<?> addProductSales(@RequestBody List<ProductSale> productSales, HttpServletRequest request) {
+        productSales = productSaleService.addProductSales(productSales);
+        return ResponseBuilder.build(HttpStatus.CREATED, productSales, request.getRequestURI());
+    }
+
     @PutMapping("/update")
     public ResponseEntity<?> updateProductSale(@RequestBody ProductSale productSale, HttpServletRequest request) {
         productSale = productSaleService.updateProductSale(productSale);
@@ -1,10 +1,14 @@
 package ru.interview.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.coyote.BadRequestException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.interview.dto.ProductSupplyView;
 import ru.interview.entity.ProductSupply;
 import ru.interview.response.ResponseBuilder;
 import ru.interview.service.ProductSupplyService;
@@ -16,17 +20,35 @@ import java.util.List;
 @RequestMapping("/product-supply")
 public class ProductSupplyController {
 
+    private static final int MAX_PAGE_LIMIT = 1000;
+
     private final ProductSupplyService productSupplyService;
+    private final ObjectMapper objectMapper;
 
     @Autowired
-    public ProductSupplyController(ProductSupplyService productSupplyService) {
+    public ProductSupplyController(ProductSupplyService productSupplyService, ObjectMapper objectMapper) {
         this.productSupplyService = productSupplyService;
+        this.objectMapper = objectMapper;
     }
 
     @GetMapping("/all")
-    public ResponseEntity<?> getAllProductSupplies(HttpServletRequest request) {
-        List<ProductSupply> productSupplies = productSupplyService.getAllProductSupplies();
-        return ResponseBuilder.ok(productSupplies, request.getRequestURI());
+    public ResponseEntity<StreamingResponseBody> getAllProductSupplies(@RequestParam(defaultValue = "false") boolean productIdOnly) {
+        return ResponseBuilder.<ProductSupplyView>stream(objectMapper,
+                consumer -> productSupplyService.forEachProductSupply(productIdOnly, consumer));
+    }
+
+    @GetMapping(value = "/all", params = "limit")
+    public ResponseEntity<?> getProductSuppliesPage(@RequestParam(required = false) Long after,
+                                                    @RequestParam int limit,
+                                                    @RequestParam(defaultValue = "false") boolean productIdOnly,
+                                                    HttpServletRequest request) {
+        if (limit < 1 || limit > MAX_PAGE_LIMIT) {
+            return ResponseBuilder.error(HttpStatus.BAD_REQUEST, new BadRequestException(
+                            "Limit must be between 1 and " + MAX_PAGE_LIMIT + ". The current value is '" + limit + "'."),
+                    request.getRequestURI());
+        }
+        List<ProductSupplyView> productSupplies = productSupplyService.getProductSuppliesAfter(after, limit, productIdOnly);
+        return ResponseBuilder.cursor(productSupplies, limit, ProductSupplyView::getId, request.getRequestURI());
     }
 
     @GetMapping("/{id}")
@@ -41,6 +63,12 @@ public class ProductSupplyController {
         return ResponseBuilder.build(HttpStatus.CREATED, productSupply, request.getRequestURI());
     }
 
+    @PostMapping("/batch")
+    public ResponseEntity<?> addProductSupplies(@RequestBody List<ProductSupply> productSupplies, HttpServletRequest request) {
+        productSupplies = productSupplyService.addProductSupplies(productSupplies);
+        return ResponseBuilder.build(HttpStatus.CREATED, productSupplies, request.getRequestURI());
+    }
+
     @PutMapping("/update")
     public ResponseEntity<?> updateProductSupply(@RequestBody ProductSupply productSupply, HttpServletRequest request) {
         productSupply = productSupplyService.updateProductSupply(productSupply);
@@ -0,0 +1,145 @@
+package ru.interview.datasource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Sends connections of read-only transactions to the replicas in turn and everything else to the primary.
+// The read-only flag is only known once the transaction has started, so the data source has to be wrapped
+// in a LazyConnectionDataSourceProxy that asks for the connection on the first statement.
+public class ReplicaRoutingDataSource extends AbstractDataSource implements InitializingBean, DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(ReplicaRoutingDataSource.class);
+
+    private final DataSource primary;
+    private final Map<String, DataSource> replicas;
+    private final List<String> replicaNames;
+    private final Set<String> healthyReplicas = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger nextReplica = new AtomicInteger();
+    private final Duration checkInterval;
+    private final int checkTimeoutSeconds;
+    private ScheduledExecutorService healthChecker;
+
+    public ReplicaRoutingDataSource(DataSource primary, Map<String, DataSource> replicas,
+                                    Duration checkInterval, Duration checkTimeout) {
+        this.primary = primary;
+        this.replicas = replicas;
+        this.replicaNames = new ArrayList<>(replicas.keySet());
+        this.checkInterval = checkInterval;
+        this.checkTimeoutSeconds = (int) Math.max(1, checkTimeout.getSeconds());
+        this.healthyReplicas.addAll(replicaNames);
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        healthChecker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "replica-health-check");
+            thread.setDaemon(true);
+            return thread;
+        });
+        healthChecker.scheduleWithFixedDelay(this::checkReplicas,
+                checkInterval.toMillis(), checkInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        if (healthChecker != null) {
+            healthChecker.shutdownNow();
+        }
+        for (DataSource dataSource : replicas.values()) {
+            close(dataSource);
+        }
+        close(primary);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        String replica = TransactionSynchronizationManager.isCurrentTransactionReadOnly() ? nextHealthyReplica() : null;
+        if (replica != null) {
+            try {
+                return replicas.get(replica).getConnection();
+            } catch (SQLException | RuntimeException e) {
+                markDown(replica, e);
+            }
+        }
+        return primary.getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        String replica = TransactionSynchronizationManager.isCurrentTransactionReadOnly() ? nextHealthyReplica() : null;
+        if (replica != null) {
+            try {
+                return replicas.get(replica).getConnection(username, password);
+            } catch (SQLException | RuntimeException e) {
+                markDown(replica, e);
+            }
+        }
+        return primary.getConnection(username, password);
+    }
+
+    public List<DataSource> getDataSources() {
+        List<DataSource> dataSources = new ArrayList<>(replicas.values());
+        dataSources.add(0, primary);
+        return dataSources;
+    }
+
+    public Set<String> getHealthyReplicas() {
+        return Set.copyOf(healthyReplicas);
+    }
+
+    void checkReplicas() {
+        for (String replica : replicaNames) {
+            try (Connection connection = replicas.get(replica).getConnection()) {
+                if (connection.isValid(checkTimeoutSeconds)) {
+                    if (healthyReplicas.add(replica)) {
+                        log.info("Replica {} is back, read-only transactions are routed to it again", replica);
+                    }
+                } else {
+                    markDown(replica, null);
+                }
+            } catch (SQLException | RuntimeException e) {
+                markDown(replica, e);
+            }
+        }
+    }
+
+    private String nextHealthyReplica() {
+        for (int i = 0; i < replicaNames.size(); i++) {
+            String replica = replicaNames.get(Math.floorMod(nextReplica.getAndIncrement(), replicaNames.size()));
+            if (healthyReplicas.contains(replica)) {
+                return replica;
+            }
+        }
+        return null;
+    }
+
+    private void markDown(String replica, Exception cause) {
+        if (healthyReplicas.remove(replica)) {
+            log.warn("Replica {} is unavailable, read-only transactions fall back to the primary", replica, cause);
+        }
+    }
+
+    private static void close(DataSource dataSource) throws Exception {
+        if (dataSource instanceof AutoCloseable) {
+            ((AutoCloseable) dataSource).close();
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package ru.interview.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+public class ProductImportResult {
+
+    private long imported;
+    private List<Failure> failures = new ArrayList<>();
+
+    public void addFailure(long index, String error) {
+        failures.add(new Failure(index, error));
+    }
+
+    @Data
+    @AllArgsConstructor
+    public static class Failure {
+        private long index;
+        private String error;
+    }
+}
@@ -0,0 +1,16 @@
+package ru.interview.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Value;
+
+@Value
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ProductRef {
+    Long id;
+    String name;
+    Double price;
+
+    public static ProductRef of(Long id) {
+        return new ProductRef(id, null, null);
+    }
+}
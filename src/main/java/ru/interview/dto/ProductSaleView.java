@@ -0,0 +1,36 @@
+package ru.interview.dto;
+
+import lombok.Value;
+
+import java.time.LocalDateTime;
+
+@Value
+public class ProductSaleView {
+    Long id;
+    String documentName;
+    ProductRef product;
+    Integer quantity;
+    Double purchasePrice;
+    LocalDateTime soldAt;
+
+    // Constructor expressions of ProductSaleRepository, with and without the joined product columns
+    public ProductSaleView(Long id, String documentName, Integer quantity, Double purchasePrice, LocalDateTime soldAt,
+                           Long productId, String productName, Double productPrice) {
+        this(id, documentName, new ProductRef(productId, productName, productPrice), quantity, purchasePrice, soldAt);
+    }
+
+    public ProductSaleView(Long id, String documentName, Integer quantity, Double purchasePrice, LocalDateTime soldAt,
+                           Long productId) {
+        this(id, documentName, ProductRef.of(productId), quantity, purchasePrice, soldAt);
+    }
+
+    public ProductSaleView(Long id, String documentName, ProductRef product, Integer quantity, Double purchasePrice,
+                           LocalDateTime soldAt) {
+        this.id = id;
+        this.documentName = documentName;
+        this.product = product;
+        this.quantity = quantity;
+        this.purchasePrice = purchasePrice;
+        this.soldAt = soldAt;
+    }
+}
@@ -0,0 +1,12 @@
+package ru.interview.dto;
+
+import lombok.Value;
+
+import java.time.LocalDate;
+
+@Value
+public class ProductSalesDay {
+    LocalDate date;
+    Long units;
+    Double revenue;
+}
@@ -0,0 +1,21 @@
+package ru.interview.dto;
+
+import lombok.Value;
+
+@Value
+public class ProductSalesTotal {
+    ProductRef product;
+    Long units;
+    Double revenue;
+
+    // Constructor expression of ProductSaleDailyRepository
+    public ProductSalesTotal(Long productId, String productName, Double productPrice, Long units, Double revenue) {
+        this(new ProductRef(productId, productName, productPrice), units, revenue);
+    }
+
+    public ProductSalesTotal(ProductRef product, Long units, Double revenue) {
+        this.product = product;
+        this.units = units;
+        this.revenue = revenue;
+    }
+}
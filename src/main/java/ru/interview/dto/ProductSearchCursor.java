@@ -0,0 +1,62 @@
+package ru.interview.dto;
+
+import lombok.Value;
+import ru.interview.exception.ProductValidationException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+// Position after the last product of a search page: its sort value and id, encoded into an opaque token.
+// A cursor issued by the in-memory index is marked, the database orders names by its own collation
+@Value
+public class ProductSearchCursor {
+
+    private static final String INDEXED = "@index";
+
+    String sortBy;
+    Object value;
+    Long id;
+    boolean indexed;
+
+    public ProductSearchCursor(String sortBy, Object value, Long id) {
+        this(sortBy, value, id, false);
+    }
+
+    public ProductSearchCursor(String sortBy, Object value, Long id, boolean indexed) {
+        this.sortBy = sortBy;
+        this.value = value;
+        this.id = id;
+        this.indexed = indexed;
+    }
+
+    public static ProductSearchCursor after(String sortBy, ProductView product, boolean indexed) {
+        return new ProductSearchCursor(sortBy, "price".equals(sortBy) ? product.getPrice() : product.getName(),
+                product.getId(), indexed);
+    }
+
+    public static ProductSearchCursor decode(String token, String sortBy) {
+        String[] parts;
+        try {
+            parts = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8).split(":", 3);
+        } catch (IllegalArgumentException e) {
+            throw new ProductValidationException("Cursor '" + token + "' is malformed.");
+        }
+        boolean indexed = parts[0].endsWith(INDEXED);
+        String issuedFor = indexed ? parts[0].substring(0, parts[0].length() - INDEXED.length()) : parts[0];
+        if (parts.length < 2 || !issuedFor.equals(sortBy)) {
+            throw new ProductValidationException("Cursor '" + token + "' was not issued for sorting by '" + sortBy + "'.");
+        }
+        try {
+            Object value = parts.length == 2 ? null : "price".equals(sortBy) ? Double.valueOf(parts[2]) : parts[2];
+            return new ProductSearchCursor(sortBy, value, Long.valueOf(parts[1]), indexed);
+        } catch (NumberFormatException e) {
+            throw new ProductValidationException("Cursor '" + token + "' is malformed.");
+        }
+    }
+
+    public String encode() {
+        String sort = indexed ? sortBy + INDEXED : sortBy;
+        String position = value == null ? sort + ":" + id : sort + ":" + id + ":" + value;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
+}
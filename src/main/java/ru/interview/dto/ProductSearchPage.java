@@ -0,0 +1,12 @@
+package ru.interview.dto;
+
+import lombok.Value;
+import org.springframework.data.domain.Slice;
+
+// A sorted search page with the cursor of its next page, which depends on whether the index or the database served it
+@Value
+public class ProductSearchPage {
+
+    Slice<ProductView> products;
+    ProductSearchCursor next;
+}
@@ -0,0 +1,28 @@
+package ru.interview.dto;
+
+import lombok.Value;
+
+@Value
+public class ProductSupplyView {
+    Long id;
+    String documentName;
+    ProductRef product;
+    Integer quantity;
+
+    // Constructor expressions of ProductSupplyRepository, with and without the joined product columns
+    public ProductSupplyView(Long id, String documentName, Integer quantity,
+                             Long productId, String productName, Double productPrice) {
+        this(id, documentName, new ProductRef(productId, productName, productPrice), quantity);
+    }
+
+    public ProductSupplyView(Long id, String documentName, Integer quantity, Long productId) {
+        this(id, documentName, ProductRef.of(productId), quantity);
+    }
+
+    public ProductSupplyView(Long id, String documentName, ProductRef product, Integer quantity) {
+        this.id = id;
+        this.documentName = documentName;
+        this.product = product;
+        this.quantity = quantity;
+    }
+}
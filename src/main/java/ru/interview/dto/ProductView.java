@@ -0,0 +1,42 @@
+package ru.interview.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Builder;
+import lombok.Value;
+import ru.interview.exception.ProductValidationException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Value
+@Builder
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ProductView {
+
+    public static final List<String> FIELDS = List.of("id", "name", "description", "price", "quantity", "inStock");
+
+    Long id;
+    String name;
+    String description;
+    Double price;
+    Integer quantity;
+    Boolean inStock;
+
+    // Parses the fields query parameter, all fields are selected when it is empty
+    public static List<String> fields(String fields) {
+        if (fields == null || fields.isBlank()) {
+            return FIELDS;
+        }
+        List<String> selected = new ArrayList<>();
+        for (String field : fields.split(",")) {
+            field = field.trim();
+            if (!FIELDS.contains(field)) {
+                throw new ProductValidationException("Unknown field '" + field + "'. Available fields: " + String.join(",", FIELDS));
+            }
+            if (!selected.contains(field)) {
+                selected.add(field);
+            }
+        }
+        return selected;
+    }
+}
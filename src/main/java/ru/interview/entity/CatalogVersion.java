@@ -0,0 +1,24 @@
+package ru.interview.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+
+// Single row counting committed product changes. It is bumped by the transaction that changes the products,
+// so whoever sees a change also sees a version that covers it
+@Entity
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CatalogVersion {
+
+    public static final long ID = 1;
+
+    @Id
+    private Long id;
+
+    private long version;
+}
@@ -0,0 +1,49 @@
+package ru.interview.entity;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonRawValue;
+import lombok.Data;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+// Outbox row written in the same transaction as the change it describes. The position is assigned after commit,
+// in commit order, so consumers reading past an offset never skip a change that committed late
+@Entity
+@Table(indexes = {
+        @Index(name = "change_event_position_idx", columnList = "position", unique = true),
+        @Index(name = "change_event_entity_position_idx", columnList = "entity, position"),
+        @Index(name = "change_event_created_at_idx", columnList = "createdAt")
+})
+@Data
+public class ChangeEvent {
+
+    public static final String PRODUCT = "product";
+    public static final String PRODUCT_SALE = "product-sale";
+    public static final String PRODUCT_SUPPLY = "product-supply";
+
+    public enum Type {
+        CREATED, UPDATED, DELETED
+    }
+
+    @Id
+    @JsonIgnore
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "change_event_seq")
+    @SequenceGenerator(name = "change_event_seq", sequenceName = "change_event_seq", allocationSize = 50)
+    private Long id;
+
+    private Long position;
+
+    private String entity;
+
+    private Long entityId;
+
+    @Enumerated(EnumType.STRING)
+    private Type type;
+
+    @JsonRawValue
+    @Column(columnDefinition = "text")
+    private String payload;
+
+    private LocalDateTime createdAt;
+}
@@ -0,0 +1,25 @@
+package ru.interview.entity;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+
+// Single row holding the last assigned change position, its lock lets one instance sequence at a time
+@Entity
+@Data
+@NoArgsConstructor
+public class ChangeFeedHead {
+
+    public static final long ID = 1;
+
+    @Id
+    private Long id;
+
+    private long position;
+
+    public ChangeFeedHead(Long id) {
+        this.id = id;
+    }
+}
@@ -1,19 +1,25 @@
 package ru.interview.entity;
 
+import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.Data;
+import org.hibernate.annotations.DynamicUpdate;
 
-import javax.persistence.Entity;
-import javax.persistence.GeneratedValue;
-import javax.persistence.GenerationType;
-import javax.persistence.Id;
+import javax.persistence.*;
 import javax.validation.constraints.*;
 
 @Entity
+@DynamicUpdate
+@Table(indexes = {
+        @Index(name = "product_price_id_idx", columnList = "price, id"),
+        @Index(name = "product_name_id_idx", columnList = "name, id"),
+        @Index(name = "product_in_stock_price_id_idx", columnList = "inStock, price, id")
+})
 @Data
 public class Product {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "product_seq")
+    @SequenceGenerator(name = "product_seq", sequenceName = "product_seq", allocationSize = 50)
     private Long id;
 
     @NotBlank(message = "Product name is mandatory")
@@ -26,5 +32,15 @@ public class Product {
     @Min(value = 0, message = "Price must be greater than or equal to 0")
     private Double price;
 
+    @Min(value = 0, message = "Quantity must be greater than or equal to 0")
+    private Integer quantity;
+
     private Boolean inStock;
+
+    // A primitive version keeps save() of a detached product with an id an update, the default
+    // lets the column be added to a filled table
+    @Version
+    @Column(columnDefinition = "bigint default 0 not null")
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    private long version;
 }
\ No newline at end of file
@@ -1,5 +1,7 @@
 package ru.interview.entity;
 
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.Data;
 
 import javax.persistence.*;
@@ -7,13 +9,15 @@ import javax.validation.constraints.Min;
 import javax.validation.constraints.NotBlank;
 import javax.validation.constraints.NotNull;
 import javax.validation.constraints.Size;
+import java.time.LocalDateTime;
 
 @Entity
 @Data
 public class ProductSale {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "product_sale_seq")
+    @SequenceGenerator(name = "product_sale_seq", sequenceName = "product_sale_seq", allocationSize = 50)
     private Long id;
 
     @NotBlank(message = "Document name is mandatory")
@@ -21,14 +25,19 @@ public class ProductSale {
     private String documentName;
 
     @NotNull(message = "Product is mandatory")
-    @ManyToOne(fetch = FetchType.EAGER)
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "product_id")
+    @JsonIgnoreProperties({"hibernateLazyInitializer", "handler"})
     private Product product;
 
+    @NotNull(message = "Quantity is mandatory")
     @Min(value = 1, message = "Quantity must be greater than 0")
     private Integer quantity;
 
     @Min(value = 0, message = "Price must be greater than or equal to 0")
     private Double purchasePrice;
 
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    private LocalDateTime soldAt;
+
 }
@@ -0,0 +1,37 @@
+package ru.interview.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+import java.io.Serializable;
+import java.time.LocalDate;
+
+// Units and revenue of a product per day, kept up to date by every sale document change
+@Entity
+@IdClass(ProductSaleDaily.Key.class)
+@Table(indexes = @Index(name = "product_sale_daily_sale_date_idx", columnList = "saleDate"))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProductSaleDaily {
+
+    @Id
+    private Long productId;
+
+    @Id
+    private LocalDate saleDate;
+
+    private Long units;
+
+    private Double revenue;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private Long productId;
+        private LocalDate saleDate;
+    }
+}
@@ -0,0 +1,23 @@
+package ru.interview.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+
+// Units and revenue of a product from sales recorded before they had a date, counted in totals of every period
+@Entity
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProductSaleUndated {
+
+    @Id
+    private Long productId;
+
+    private Long units;
+
+    private Double revenue;
+}
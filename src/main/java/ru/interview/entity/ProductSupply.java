@@ -1,5 +1,6 @@
 package ru.interview.entity;
 
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import lombok.Data;
 
 import javax.persistence.*;
@@ -10,7 +11,8 @@ import javax.validation.constraints.*;
 public class ProductSupply {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "product_supply_seq")
+    @SequenceGenerator(name = "product_supply_seq", sequenceName = "product_supply_seq", allocationSize = 50)
     private Long id;
 
     @NotBlank(message = "Document name is mandatory")
@@ -18,10 +20,12 @@ public class ProductSupply {
     private String documentName;
 
     @NotNull(message = "Product is mandatory")
-    @ManyToOne(fetch = FetchType.EAGER)
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "product_id")
+    @JsonIgnoreProperties({"hibernateLazyInitializer", "handler"})
     private Product product;
 
+    @NotNull(message = "Quantity is mandatory")
     @Min(value = 1, message = "Quantity must be greater than 0")
     private Integer quantity;
 
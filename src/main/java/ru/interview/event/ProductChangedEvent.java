@@ -0,0 +1,8 @@
+package ru.interview.event;
+
+import lombok.Value;
+
+@Value
+public class ProductChangedEvent {
+    Long productId;
+}
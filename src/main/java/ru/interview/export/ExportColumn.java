@@ -0,0 +1,15 @@
+package ru.interview.export;
+
+import lombok.Value;
+
+import java.util.function.Function;
+
+@Value
+public class ExportColumn<T> {
+    String name;
+    Function<T, ?> value;
+
+    public static <T> ExportColumn<T> of(String name, Function<T, ?> value) {
+        return new ExportColumn<>(name, value);
+    }
+}
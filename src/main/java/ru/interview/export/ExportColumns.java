@@ -0,0 +1,60 @@
+package ru.interview.export;
+
+import ru.interview.dto.ProductSaleView;
+import ru.interview.dto.ProductSupplyView;
+import ru.interview.dto.ProductView;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+// CSV columns of the exported views, NDJSON lines are the same views written by Jackson
+public final class ExportColumns {
+
+    private ExportColumns() {
+    }
+
+    public static List<ExportColumn<ProductView>> products(List<String> fields) {
+        return fields.stream().map(ExportColumns::productColumn).collect(Collectors.toList());
+    }
+
+    public static List<ExportColumn<ProductSaleView>> productSales(boolean productIdOnly) {
+        List<ExportColumn<ProductSaleView>> columns = new ArrayList<>();
+        columns.add(ExportColumn.of("id", ProductSaleView::getId));
+        columns.add(ExportColumn.of("documentName", ProductSaleView::getDocumentName));
+        columns.add(ExportColumn.of("productId", sale -> sale.getProduct().getId()));
+        if (!productIdOnly) {
+            columns.add(ExportColumn.of("productName", sale -> sale.getProduct().getName()));
+            columns.add(ExportColumn.of("productPrice", sale -> sale.getProduct().getPrice()));
+        }
+        columns.add(ExportColumn.of("quantity", ProductSaleView::getQuantity));
+        columns.add(ExportColumn.of("purchasePrice", ProductSaleView::getPurchasePrice));
+        columns.add(ExportColumn.of("soldAt", ProductSaleView::getSoldAt));
+        return columns;
+    }
+
+    public static List<ExportColumn<ProductSupplyView>> productSupplies(boolean productIdOnly) {
+        List<ExportColumn<ProductSupplyView>> columns = new ArrayList<>();
+        columns.add(ExportColumn.of("id", ProductSupplyView::getId));
+        columns.add(ExportColumn.of("documentName", ProductSupplyView::getDocumentName));
+        columns.add(ExportColumn.of("productId", supply -> supply.getProduct().getId()));
+        if (!productIdOnly) {
+            columns.add(ExportColumn.of("productName", supply -> supply.getProduct().getName()));
+            columns.add(ExportColumn.of("productPrice", supply -> supply.getProduct().getPrice()));
+        }
+        columns.add(ExportColumn.of("quantity", ProductSupplyView::getQuantity));
+        return columns;
+    }
+
+    private static ExportColumn<ProductView> productColumn(String field) {
+        switch (field) {
+            case "id": return ExportColumn.of(field, ProductView::getId);
+            case "name": return ExportColumn.of(field, ProductView::getName);
+            case "description": return ExportColumn.of(field, ProductView::getDescription);
+            case "price": return ExportColumn.of(field, ProductView::getPrice);
+            case "quantity": return ExportColumn.of(field, ProductView::getQuantity);
+            case "inStock": return ExportColumn.of(field, ProductView::getInStock);
+            default: throw new IllegalArgumentException("Unknown product field " + field);
+        }
+    }
+}
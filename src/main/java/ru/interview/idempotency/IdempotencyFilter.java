@@ -0,0 +1,272 @@
+package ru.interview.idempotency;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+import org.springframework.util.StreamUtils;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+import ru.interview.response.ResponseBuilder;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.security.Principal;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Remembers successful responses of document writes by their Idempotency-Key, so a client retrying after a timeout
+// gets the original response instead of a second document and a second stock change. Failed writes roll back,
+// so their keys are released and the retry runs again
+@Component
+public class IdempotencyFilter extends OncePerRequestFilter implements MeterBinder {
+
+    public static final String KEY_HEADER = "Idempotency-Key";
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+
+    private static final int MAX_KEY_LENGTH = 255;
+    private static final int ENTRY_OVERHEAD_BYTES = 256;
+    private static final Set<String> PATHS = Set.of(
+            "/product/add", "/product/update",
+            "/product-sale/add", "/product-sale/batch", "/product-sale/update",
+            "/product-supply/add", "/product-supply/batch", "/product-supply/update");
+
+    private final ObjectMapper objectMapper;
+    private final Cache<String, StoredResponse> cache;
+    // Key to request body fingerprint of the requests still running
+    private final Map<String, String> inFlight = new ConcurrentHashMap<>();
+
+    @Autowired
+    public IdempotencyFilter(ObjectMapper objectMapper,
+                             @Value("${app.idempotency.max-memory:16MB}") DataSize maxMemory,
+                             @Value("${app.idempotency.ttl:24h}") Duration ttl) {
+        this.objectMapper = objectMapper;
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxMemory.toBytes())
+                .weigher((String key, StoredResponse response) -> ENTRY_OVERHEAD_BYTES + bytes(key) + response.weight())
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return request.getHeader(KEY_HEADER) == null || !PATHS.contains(path(request));
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        String key = request.getHeader(KEY_HEADER);
+        if (key.isBlank() || key.length() > MAX_KEY_LENGTH) {
+            error(response, HttpStatus.BAD_REQUEST, request,
+                    KEY_HEADER + " must be between 1 and " + MAX_KEY_LENGTH + " characters.");
+            return;
+        }
+        byte[] body = StreamUtils.copyToByteArray(request.getInputStream());
+        String cacheKey = client(request) + " " + request.getMethod() + " " + path(request) + " " + key;
+        String fingerprint = DigestUtils.md5DigestAsHex(body);
+
+        // Running requests reserve their key outside the cache, where eviction could drop the reservation and let
+        // a retry run the write a second time
+        StoredResponse stored = cache.getIfPresent(cacheKey);
+        if (stored == null) {
+            String running = inFlight.putIfAbsent(cacheKey, fingerprint);
+            if (running != null) {
+                if (running.equals(fingerprint)) {
+                    error(response, HttpStatus.CONFLICT, request,
+                            "A request with " + KEY_HEADER + " '" + key + "' is still in progress.");
+                } else {
+                    reused(response, request, key);
+                }
+                return;
+            }
+            // The first attempt may have completed between the lookup and the reservation
+            stored = cache.getIfPresent(cacheKey);
+            if (stored != null) {
+                inFlight.remove(cacheKey);
+            }
+        }
+        if (stored != null) {
+            if (stored.getFingerprint().equals(fingerprint)) {
+                response.setStatus(stored.getStatus());
+                response.setContentType(stored.getContentType());
+                stored.getHeaders().forEach((name, values) -> values.forEach(value -> response.addHeader(name, value)));
+                response.setHeader(REPLAYED_HEADER, "true");
+                response.getOutputStream().write(stored.getBody());
+            } else {
+                reused(response, request, key);
+            }
+            return;
+        }
+
+        ContentCachingResponseWrapper responseWrapper = new ContentCachingResponseWrapper(response);
+        try {
+            filterChain.doFilter(new CachedBodyRequest(request, body), responseWrapper);
+            if (HttpStatus.valueOf(responseWrapper.getStatus()).is2xxSuccessful()) {
+                cache.put(cacheKey, new StoredResponse(fingerprint, responseWrapper.getStatus(),
+                        responseWrapper.getContentType(), headers(responseWrapper), responseWrapper.getContentAsByteArray()));
+            }
+        } finally {
+            inFlight.remove(cacheKey);
+            responseWrapper.copyBodyToResponse();
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, cache, "idempotency");
+    }
+
+    public Map<String, Object> stats() {
+        CacheStats stats = cache.stats();
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("size", cache.estimatedSize());
+        map.put("inFlight", inFlight.size());
+        map.put("hits", stats.hitCount());
+        map.put("evictions", stats.evictionCount());
+        return map;
+    }
+
+    private void reused(HttpServletResponse response, HttpServletRequest request, String key) throws IOException {
+        error(response, HttpStatus.UNPROCESSABLE_ENTITY, request,
+                KEY_HEADER + " '" + key + "' was already used with a different request body.");
+    }
+
+    private void error(HttpServletResponse response, HttpStatus status, HttpServletRequest request, String message)
+            throws IOException {
+        response.setStatus(status.value());
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        objectMapper.writeValue(response.getOutputStream(),
+                ResponseBuilder.build(status, null, request.getRequestURI(), message).getBody());
+    }
+
+    // Content type and length are set from the stored response itself
+    private static Map<String, List<String>> headers(HttpServletResponse response) {
+        Map<String, List<String>> headers = new LinkedHashMap<>();
+        for (String name : new LinkedHashSet<>(response.getHeaderNames())) {
+            if (!name.equalsIgnoreCase(HttpHeaders.CONTENT_TYPE) && !name.equalsIgnoreCase(HttpHeaders.CONTENT_LENGTH)) {
+                headers.put(name, List.copyOf(response.getHeaders(name)));
+            }
+        }
+        return headers;
+    }
+
+    private static int bytes(String value) {
+        return value == null ? 0 : value.getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    // Keys are chosen by clients, so two clients using the same key must not get each other's responses
+    private static String client(HttpServletRequest request) {
+        Principal principal = request.getUserPrincipal();
+        return principal != null ? "user:" + principal.getName() : "address:" + request.getRemoteAddr();
+    }
+
+    private static String path(HttpServletRequest request) {
+        return request.getRequestURI().substring(request.getContextPath().length());
+    }
+
+    @Getter
+    @AllArgsConstructor
+    private static class StoredResponse {
+        private final String fingerprint;
+        private final int status;
+        private final String contentType;
+        private final Map<String, List<String>> headers;
+        private final byte[] body;
+
+        int weight() {
+            int weight = bytes(contentType) + body.length;
+            for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+                for (String value : header.getValue()) {
+                    weight += bytes(header.getKey()) + bytes(value);
+                }
+            }
+            return weight;
+        }
+    }
+
+    // The body is read up front to fingerprint it, the controller then reads this copy
+    private static class CachedBodyRequest extends HttpServletRequestWrapper {
+
+        private final byte[] body;
+
+        CachedBodyRequest(HttpServletRequest request, byte[] body) {
+            super(request);
+            this.body = body;
+        }
+
+        @Override
+        public ServletInputStream getInputStream() {
+            ByteArrayInputStream input = new ByteArrayInputStream(body);
+            return new ServletInputStream() {
+                @Override
+                public int read() {
+                    return input.read();
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) {
+                    return input.read(b, off, len);
+                }
+
+                @Override
+                public boolean isFinished() {
+                    return input.available() == 0;
+                }
+
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                // The whole body is already in memory, so it is available at once and ends right after
+                @Override
+                public void setReadListener(ReadListener readListener) {
+                    try {
+                        readListener.onDataAvailable();
+                        readListener.onAllDataRead();
+                    } catch (IOException e) {
+                        readListener.onError(e);
+                    }
+                }
+            };
+        }
+
+        @Override
+        public BufferedReader getReader() {
+            String encoding = getCharacterEncoding();
+            return new BufferedReader(new InputStreamReader(getInputStream(),
+                    encoding != null ? Charset.forName(encoding) : StandardCharsets.UTF_8));
+        }
+    }
+}
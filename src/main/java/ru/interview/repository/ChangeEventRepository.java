@@ -0,0 +1,31 @@
+package ru.interview.repository;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import ru.interview.entity.ChangeEvent;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface ChangeEventRepository extends JpaRepository<ChangeEvent, Long> {
+
+    boolean existsByPositionIsNull();
+
+    boolean existsByEntityAndPositionIsNull(String entity);
+
+    @Query("SELECT e FROM ChangeEvent e WHERE e.position IS NULL ORDER BY e.id")
+    List<ChangeEvent> findUnsequenced(Pageable pageable);
+
+    List<ChangeEvent> findByPositionGreaterThanOrderByPosition(long after, Pageable pageable);
+
+    List<ChangeEvent> findByEntityAndPositionGreaterThanOrderByPosition(String entity, long after, Pageable pageable);
+
+    @Modifying
+    @Query("DELETE FROM ChangeEvent e WHERE e.createdAt < :before AND e.position IS NOT NULL")
+    int deleteSequencedBefore(@Param("before") LocalDateTime before);
+}
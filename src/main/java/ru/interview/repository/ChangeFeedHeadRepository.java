@@ -0,0 +1,22 @@
+package ru.interview.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import ru.interview.entity.ChangeFeedHead;
+
+import javax.persistence.LockModeType;
+import java.util.Optional;
+
+@Repository
+public interface ChangeFeedHeadRepository extends JpaRepository<ChangeFeedHead, Long> {
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT h FROM ChangeFeedHead h WHERE h.id = :id")
+    Optional<ChangeFeedHead> findForUpdate(@Param("id") Long id);
+
+    @Query("SELECT h.position FROM ChangeFeedHead h WHERE h.id = :id")
+    Optional<Long> findPosition(@Param("id") Long id);
+}
@@ -1,38 +1,28 @@
 package ru.interview.repository;
 
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import ru.interview.entity.Product;
 
-import java.util.List;
+import javax.persistence.LockModeType;
+import java.util.Optional;
 
 @Repository
-public interface ProductRepository extends JpaRepository<Product, Long> {
+public interface ProductRepository extends JpaRepository<Product, Long>, JpaSpecificationExecutor<Product>, ProductViewRepository {
 
-    @Query("SELECT p FROM Product p WHERE " +
-            "(LOWER(p.name) LIKE LOWER(CONCAT('%', :name, '%')) OR :name IS NULL) AND " +
-            "(p.price >= :minPrice OR :minPrice IS NULL) AND " +
-            "(p.price <= :maxPrice OR :maxPrice IS NULL) AND " +
-            "(p.inStock = :inStock OR :inStock IS NULL)")
-    Page<Product> findByFiltersAndSort(@Param("name") String name,
-                                @Param("minPrice") Double minPrice,
-                                @Param("maxPrice") Double maxPrice,
-                                @Param("inStock") Boolean inStock,
-                                Pageable pageable);
-
-
-    @Query("SELECT p FROM Product p WHERE " +
-            "(LOWER(p.name) LIKE LOWER(CONCAT('%', :name, '%')) OR :name IS NULL) AND " +
-            "(p.price >= :minPrice OR :minPrice IS NULL) AND " +
-            "(p.price <= :maxPrice OR :maxPrice IS NULL) AND " +
-            "(p.inStock = :inStock OR :inStock IS NULL) ")
-    List<Product> findByFilters(@Param("name") String name,
-                                @Param("minPrice") Double minPrice,
-                                @Param("maxPrice") Double maxPrice,
-                                @Param("inStock") Boolean inStock);
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Product p SET p.quantity = p.quantity + :delta, " +
+            "p.inStock = CASE WHEN p.quantity + :delta > 0 THEN true ELSE false END, " +
+            "p.version = p.version + 1 " +
+            "WHERE p.id = :id AND p.quantity + :delta >= 0")
+    int adjustQuantity(@Param("id") Long id, @Param("delta") int delta);
 
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT p FROM Product p WHERE p.id = :id")
+    Optional<Product> findForUpdate(@Param("id") Long id);
 }
@@ -0,0 +1,56 @@
+package ru.interview.repository;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import ru.interview.dto.ProductSalesDay;
+import ru.interview.dto.ProductSalesTotal;
+import ru.interview.entity.ProductSaleDaily;
+
+import java.time.LocalDate;
+import java.util.List;
+
+@Repository
+public interface ProductSaleDailyRepository extends JpaRepository<ProductSaleDaily, ProductSaleDaily.Key> {
+
+    // Products sold within the period or before sales had a date, the undated ones count in every period
+    String SOLD = "Product p LEFT JOIN ProductSaleDaily d ON d.productId = p.id AND d.saleDate BETWEEN :from AND :to " +
+            "LEFT JOIN ProductSaleUndated u ON u.productId = p.id WHERE d.productId IS NOT NULL OR u.productId IS NOT NULL";
+    String UNITS = "COALESCE(SUM(d.units), 0) + COALESCE(u.units, 0)";
+    String REVENUE = "COALESCE(SUM(d.revenue), 0.0) + COALESCE(u.revenue, 0.0)";
+    String TOTALS = UNITS + ", " + REVENUE;
+
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE ProductSaleDaily d SET d.units = d.units + :units, d.revenue = d.revenue + :revenue " +
+            "WHERE d.productId = :productId AND d.saleDate = :saleDate")
+    int add(@Param("productId") Long productId, @Param("saleDate") LocalDate saleDate,
+            @Param("units") long units, @Param("revenue") double revenue);
+
+    @Query("SELECT new ru.interview.dto.ProductSalesTotal(p.id, p.name, p.price, " + TOTALS + ") " +
+            "FROM " + SOLD + " GROUP BY p.id, p.name, p.price, u.units, u.revenue ORDER BY p.id")
+    List<ProductSalesTotal> findTotals(@Param("from") LocalDate from, @Param("to") LocalDate to, Pageable pageable);
+
+    @Query("SELECT new ru.interview.dto.ProductSalesTotal(p.id, p.name, p.price, " + TOTALS + ") " +
+            "FROM " + SOLD + " GROUP BY p.id, p.name, p.price, u.units, u.revenue " +
+            "ORDER BY " + REVENUE + " DESC, p.id")
+    List<ProductSalesTotal> findTopByRevenue(@Param("from") LocalDate from, @Param("to") LocalDate to, Pageable pageable);
+
+    @Query("SELECT new ru.interview.dto.ProductSalesTotal(p.id, p.name, p.price, " + TOTALS + ") " +
+            "FROM " + SOLD + " GROUP BY p.id, p.name, p.price, u.units, u.revenue " +
+            "ORDER BY " + UNITS + " DESC, p.id")
+    List<ProductSalesTotal> findTopByUnits(@Param("from") LocalDate from, @Param("to") LocalDate to, Pageable pageable);
+
+    @Query("SELECT new ru.interview.dto.ProductSalesDay(d.saleDate, SUM(d.units), SUM(d.revenue)) " +
+            "FROM ProductSaleDaily d WHERE d.saleDate BETWEEN :from AND :to " +
+            "GROUP BY d.saleDate ORDER BY d.saleDate")
+    List<ProductSalesDay> findDaily(@Param("from") LocalDate from, @Param("to") LocalDate to);
+
+    @Query("SELECT new ru.interview.dto.ProductSalesDay(d.saleDate, SUM(d.units), SUM(d.revenue)) " +
+            "FROM ProductSaleDaily d WHERE d.productId = :productId AND d.saleDate BETWEEN :from AND :to " +
+            "GROUP BY d.saleDate ORDER BY d.saleDate")
+    List<ProductSalesDay> findDailyByProduct(@Param("productId") Long productId,
+                                             @Param("from") LocalDate from, @Param("to") LocalDate to);
+}
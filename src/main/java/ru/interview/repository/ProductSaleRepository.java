@@ -1,11 +1,44 @@
 package ru.interview.repository;
 
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import ru.interview.dto.ProductSaleView;
 import ru.interview.entity.ProductSale;
 
+import javax.persistence.QueryHint;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.hibernate.annotations.QueryHints.FETCH_SIZE;
+
 @Repository
 public interface ProductSaleRepository extends JpaRepository<ProductSale, Long> {
 
+    @Override
+    @EntityGraph(attributePaths = "product")
+    Optional<ProductSale> findById(Long id);
+
+    @Query("SELECT new ru.interview.dto.ProductSaleView(s.id, s.documentName, s.quantity, s.purchasePrice, s.soldAt, p.id, p.name, p.price) " +
+            "FROM ProductSale s JOIN s.product p WHERE s.id > :afterId ORDER BY s.id")
+    List<ProductSaleView> findNextPage(@Param("afterId") Long afterId, Pageable pageable);
+
+    @Query("SELECT new ru.interview.dto.ProductSaleView(s.id, s.documentName, s.quantity, s.purchasePrice, s.soldAt, s.product.id) " +
+            "FROM ProductSale s WHERE s.id > :afterId ORDER BY s.id")
+    List<ProductSaleView> findNextPageWithProductIds(@Param("afterId") Long afterId, Pageable pageable);
+
+    @QueryHints(@QueryHint(name = FETCH_SIZE, value = "500"))
+    @Query("SELECT new ru.interview.dto.ProductSaleView(s.id, s.documentName, s.quantity, s.purchasePrice, s.soldAt, p.id, p.name, p.price) " +
+            "FROM ProductSale s JOIN s.product p ORDER BY s.id")
+    Stream<ProductSaleView> streamAll();
 
+    @QueryHints(@QueryHint(name = FETCH_SIZE, value = "500"))
+    @Query("SELECT new ru.interview.dto.ProductSaleView(s.id, s.documentName, s.quantity, s.purchasePrice, s.soldAt, s.product.id) " +
+            "FROM ProductSale s ORDER BY s.id")
+    Stream<ProductSaleView> streamAllWithProductIds();
 }
@@ -0,0 +1,17 @@
+package ru.interview.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import ru.interview.entity.ProductSaleUndated;
+
+@Repository
+public interface ProductSaleUndatedRepository extends JpaRepository<ProductSaleUndated, Long> {
+
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE ProductSaleUndated u SET u.units = u.units + :units, u.revenue = u.revenue + :revenue " +
+            "WHERE u.productId = :productId")
+    int add(@Param("productId") Long productId, @Param("units") long units, @Param("revenue") double revenue);
+}
@@ -0,0 +1,72 @@
+package ru.interview.repository;
+
+import org.springframework.data.jpa.domain.Specification;
+import ru.interview.dto.ProductSearchCursor;
+import ru.interview.entity.Product;
+
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
+import java.util.Locale;
+
+public final class ProductSpecifications {
+
+    private ProductSpecifications() {
+    }
+
+    public static Specification<Product> byFilters(String name, Double minPrice, Double maxPrice, Boolean inStock) {
+        Specification<Product> specification = Specification.where(null);
+        if (name != null && !name.isEmpty()) specification = specification.and(nameContains(name));
+        if (minPrice != null) specification = specification.and(priceAtLeast(minPrice));
+        if (maxPrice != null) specification = specification.and(priceAtMost(maxPrice));
+        if (inStock != null) specification = specification.and(inStock(inStock));
+        return specification;
+    }
+
+    public static Specification<Product> idGreaterThan(Long id) {
+        return (root, query, builder) -> builder.greaterThan(root.get("id"), id);
+    }
+
+    // Products after the cursor in "sort value, id" order; nulls sort last (hibernate.order_by.default_null_ordering).
+    // The value >= bound comes first so the (value, id) index can seek to it
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public static Specification<Product> after(ProductSearchCursor cursor) {
+        return (root, query, builder) -> {
+            Path<Comparable> value = root.get(cursor.getSortBy());
+            Predicate laterId = builder.greaterThan(root.get("id"), cursor.getId());
+            if (cursor.getValue() == null) {
+                return builder.and(builder.isNull(value), laterId);
+            }
+            Comparable last = (Comparable) cursor.getValue();
+            return builder.or(
+                    builder.and(builder.greaterThanOrEqualTo(value, last), builder.or(builder.greaterThan(value, last), laterId)),
+                    builder.isNull(value));
+        };
+    }
+
+    public static Specification<Product> nameContains(String name) {
+        return (root, query, builder) -> builder.like(
+                builder.lower(root.get("name")), "%" + name.toLowerCase(Locale.ROOT) + "%");
+    }
+
+    public static Specification<Product> priceAtLeast(Double minPrice) {
+        return (root, query, builder) -> builder.greaterThanOrEqualTo(root.get("price"), minPrice);
+    }
+
+    public static Specification<Product> priceAtMost(Double maxPrice) {
+        return (root, query, builder) -> builder.lessThanOrEqualTo(root.get("price"), maxPrice);
+    }
+
+    public static Specification<Product> inStock(Boolean inStock) {
+        return (root, query, builder) -> builder.equal(root.get("inStock"), inStock);
+    }
+
+    public static Specification<Product> orderByRelevance(String name) {
+        return (root, query, builder) -> {
+            query.orderBy(
+                    builder.desc(builder.function("similarity", Double.class,
+                            builder.lower(root.get("name")), builder.literal(name.toLowerCase(Locale.ROOT)))),
+                    builder.asc(root.get("id")));
+            return null;
+        };
+    }
+}
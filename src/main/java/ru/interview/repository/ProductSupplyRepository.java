@@ -1,11 +1,44 @@
 package ru.interview.repository;
 
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import ru.interview.dto.ProductSupplyView;
 import ru.interview.entity.ProductSupply;
 
+import javax.persistence.QueryHint;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.hibernate.annotations.QueryHints.FETCH_SIZE;
+
 @Repository
 public interface ProductSupplyRepository extends JpaRepository<ProductSupply, Long> {
 
+    @Override
+    @EntityGraph(attributePaths = "product")
+    Optional<ProductSupply> findById(Long id);
+
+    @Query("SELECT new ru.interview.dto.ProductSupplyView(s.id, s.documentName, s.quantity, p.id, p.name, p.price) " +
+            "FROM ProductSupply s JOIN s.product p WHERE s.id > :afterId ORDER BY s.id")
+    List<ProductSupplyView> findNextPage(@Param("afterId") Long afterId, Pageable pageable);
+
+    @Query("SELECT new ru.interview.dto.ProductSupplyView(s.id, s.documentName, s.quantity, s.product.id) " +
+            "FROM ProductSupply s WHERE s.id > :afterId ORDER BY s.id")
+    List<ProductSupplyView> findNextPageWithProductIds(@Param("afterId") Long afterId, Pageable pageable);
+
+    @QueryHints(@QueryHint(name = FETCH_SIZE, value = "500"))
+    @Query("SELECT new ru.interview.dto.ProductSupplyView(s.id, s.documentName, s.quantity, p.id, p.name, p.price) " +
+            "FROM ProductSupply s JOIN s.product p ORDER BY s.id")
+    Stream<ProductSupplyView> streamAll();
 
+    @QueryHints(@QueryHint(name = FETCH_SIZE, value = "500"))
+    @Query("SELECT new ru.interview.dto.ProductSupplyView(s.id, s.documentName, s.quantity, s.product.id) " +
+            "FROM ProductSupply s ORDER BY s.id")
+    Stream<ProductSupplyView> streamAllWithProductIds();
 }
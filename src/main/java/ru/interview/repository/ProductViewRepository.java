@@ -0,0 +1,19 @@
+package ru.interview.repository;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.jpa.domain.Specification;
+import ru.interview.dto.ProductView;
+import ru.interview.entity.Product;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+public interface ProductViewRepository {
+
+    List<ProductView> findViews(Specification<Product> specification, List<String> fields, Pageable pageable);
+
+    Slice<ProductView> findViewSlice(Specification<Product> specification, List<String> fields, Pageable pageable);
+
+    Stream<ProductView> streamViews(Specification<Product> specification, List<String> fields);
+}
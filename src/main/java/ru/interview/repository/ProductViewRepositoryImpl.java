@@ -0,0 +1,108 @@
+package ru.interview.repository;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.jpa.repository.query.QueryUtils;
+import ru.interview.dto.ProductView;
+import ru.interview.entity.Product;
+
+import javax.persistence.EntityManager;
+import javax.persistence.Tuple;
+import javax.persistence.TypedQuery;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import javax.persistence.criteria.Selection;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.hibernate.annotations.QueryHints.FETCH_SIZE;
+
+// Selects only the requested columns into tuples, so no entities are loaded, snapshotted or proxied
+public class ProductViewRepositoryImpl implements ProductViewRepository {
+
+    private final EntityManager entityManager;
+
+    @Autowired
+    public ProductViewRepositoryImpl(EntityManager entityManager) {
+        this.entityManager = entityManager;
+    }
+
+    @Override
+    public List<ProductView> findViews(Specification<Product> specification, List<String> fields, Pageable pageable) {
+        TypedQuery<Tuple> query = createQuery(specification, fields, pageable);
+        if (pageable.isPaged()) {
+            query.setFirstResult((int) pageable.getOffset());
+            query.setMaxResults(pageable.getPageSize());
+        }
+        return query.getResultList().stream()
+                .map(tuple -> toView(tuple, fields))
+                .collect(Collectors.toList());
+    }
+
+    // Reads one row past the page to tell whether the next page exists, so no COUNT query is needed
+    @Override
+    public Slice<ProductView> findViewSlice(Specification<Product> specification, List<String> fields, Pageable pageable) {
+        if (pageable.isUnpaged()) {
+            return new SliceImpl<>(findViews(specification, fields, pageable));
+        }
+        List<ProductView> views = createQuery(specification, fields, pageable)
+                .setFirstResult((int) pageable.getOffset())
+                .setMaxResults(pageable.getPageSize() + 1)
+                .getResultList().stream()
+                .map(tuple -> toView(tuple, fields))
+                .collect(Collectors.toList());
+        boolean hasNext = views.size() > pageable.getPageSize();
+        return new SliceImpl<>(hasNext ? views.subList(0, pageable.getPageSize()) : views, pageable, hasNext);
+    }
+
+    @Override
+    public Stream<ProductView> streamViews(Specification<Product> specification, List<String> fields) {
+        return createQuery(specification, fields, Pageable.unpaged())
+                .setHint(FETCH_SIZE, 500)
+                .getResultStream()
+                .map(tuple -> toView(tuple, fields));
+    }
+
+    private TypedQuery<Tuple> createQuery(Specification<Product> specification, List<String> fields, Pageable pageable) {
+        CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> query = builder.createTupleQuery();
+        Root<Product> root = query.from(Product.class);
+        query.multiselect(fields.stream()
+                .map(field -> root.get(field).alias(field))
+                .toArray(Selection[]::new));
+
+        Predicate predicate = specification == null ? null : specification.toPredicate(root, query, builder);
+        if (predicate != null) {
+            query.where(predicate);
+        }
+        if (pageable.getSort().isSorted()) {
+            query.orderBy(QueryUtils.toOrders(pageable.getSort(), root, builder));
+        } else if (query.getOrderList().isEmpty()) {
+            query.orderBy(builder.asc(root.get("id")));
+        }
+        return entityManager.createQuery(query);
+    }
+
+    private static ProductView toView(Tuple tuple, List<String> fields) {
+        ProductView.ProductViewBuilder view = ProductView.builder();
+        for (String field : fields) {
+            Object value = tuple.get(field);
+            switch (field) {
+                case "id": view.id((Long) value); break;
+                case "name": view.name((String) value); break;
+                case "description": view.description((String) value); break;
+                case "price": view.price((Double) value); break;
+                case "quantity": view.quantity((Integer) value); break;
+                case "inStock": view.inStock((Boolean) value); break;
+                default: throw new IllegalArgumentException("Unknown product field " + field);
+            }
+        }
+        return view.build();
+    }
+}
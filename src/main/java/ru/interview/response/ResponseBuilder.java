@@ -1,39 +1,26 @@
 package ru.interview.response;
 
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.data.domain.Slice;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.time.ZonedDateTime;
-import java.util.Collection;
-import java.util.HashMap;
-import java.util.Map;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 public class ResponseBuilder {
 
     public static ResponseEntity<?> build(HttpStatus httpStatus, Object responseObj, String path, String error) {
-        Map<String, Object> map = new HashMap<>();
-
-        map.put("status", httpStatus.value());
-        if (error != null) {
-            map.put("error", error);
-        } else if (httpStatus.is4xxClientError() || httpStatus.is5xxServerError()) {
-            map.put("error", httpStatus.getReasonPhrase());
-        }
-
-        if (map.containsKey("error")) {
-            map.put("timestamp", ZonedDateTime.now().toLocalDateTime().toString());
-            if (path != null) map.put("path", path);
-        }
-
-        if (responseObj != null) {
-            map.put("response", responseObj);
-            if (responseObj instanceof Collection) {
-                map.put("count", ((Collection<?>) responseObj).size());
-            }
-        }
-
-        return new ResponseEntity<>(map, httpStatus);
+        return new ResponseEntity<>(body(httpStatus, responseObj, path, error, null), httpStatus);
     }
 
     public static ResponseEntity<?> build(HttpStatus httpStatus, Object responseObj, String path) {
@@ -44,6 +31,58 @@ public class ResponseBuilder {
         return build(HttpStatus.OK, responseObj, path);
     }
 
+    public static <T> ResponseEntity<?> cursor(List<T> responseObj, int limit, Function<T, ?> cursorOf, String path) {
+        Object cursor = !responseObj.isEmpty() && responseObj.size() >= limit
+                ? cursorOf.apply(responseObj.get(responseObj.size() - 1))
+                : null;
+        return new ResponseEntity<>(body(HttpStatus.OK, responseObj, path, null, cursor), HttpStatus.OK);
+    }
+
+    // hasNext comes from the slice itself, total is only written when the caller asked for it
+    public static ResponseEntity<?> slice(Slice<?> responseObj, Object cursor, Long total, String path) {
+        return new ResponseEntity<>(new ResponseEnvelope(HttpStatus.OK.value(), null, null, null,
+                responseObj.getContent(), cursor, responseObj.hasNext(), total), HttpStatus.OK);
+    }
+
+    // Spring answers 304 by itself when the request's If-None-Match matches the ETag
+    public static ResponseEntity<?> cached(ResponseEntity<?> response, String eTag, CacheControl cacheControl) {
+        return ResponseEntity.status(response.getStatusCode())
+                .headers(response.getHeaders())
+                .eTag(eTag)
+                .cacheControl(cacheControl)
+                .body(response.getBody());
+    }
+
+    // WebRequest.checkNotModified has already put the ETag on the response
+    public static ResponseEntity<?> notModified(CacheControl cacheControl) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).cacheControl(cacheControl).build();
+    }
+
+    public static <T> ResponseEntity<StreamingResponseBody> stream(ObjectMapper objectMapper, Consumer<Consumer<T>> source) {
+        StreamingResponseBody body = outputStream -> {
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream)) {
+                generator.writeStartObject();
+                generator.writeNumberField("status", HttpStatus.OK.value());
+                generator.writeArrayFieldStart("response");
+                long[] count = {0};
+                source.accept(item -> {
+                    try {
+                        generator.writeObject(item);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    count[0]++;
+                });
+                generator.writeEndArray();
+                generator.writeNumberField("count", count[0]);
+                generator.writeEndObject();
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+    }
+
     public static ResponseEntity<?> error(HttpStatus httpStatus, Object responseObj, Throwable throwable, String path) {
         return build(httpStatus, responseObj, path, throwable.getMessage());
     }
@@ -56,4 +95,14 @@ public class ResponseBuilder {
         return error(httpStatus, null, throwable, path);
     }
 
-}
\ No newline at end of file
+    private static ResponseEnvelope body(HttpStatus httpStatus, Object responseObj, String path, String error, Object cursor) {
+        if (error == null && (httpStatus.is4xxClientError() || httpStatus.is5xxServerError())) {
+            error = httpStatus.getReasonPhrase();
+        }
+        if (error == null) {
+            return new ResponseEnvelope(httpStatus.value(), null, null, null, responseObj, cursor);
+        }
+        return new ResponseEnvelope(httpStatus.value(), error, LocalDateTime.now().toString(), path, responseObj, cursor);
+    }
+
+}
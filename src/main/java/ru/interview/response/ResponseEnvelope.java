@@ -0,0 +1,83 @@
+package ru.interview.response;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import lombok.Getter;
+
+import java.io.IOException;
+import java.util.Collection;
+
+@Getter
+@JsonSerialize(using = ResponseEnvelope.Serializer.class)
+public final class ResponseEnvelope {
+
+    private final int status;
+    private final String error;
+    private final String timestamp;
+    private final String path;
+    private final Object response;
+    private final Object cursor;
+    private final Boolean hasNext;
+    private final Long total;
+
+    ResponseEnvelope(int status, String error, String timestamp, String path, Object response, Object cursor) {
+        this(status, error, timestamp, path, response, cursor, null, null);
+    }
+
+    ResponseEnvelope(int status, String error, String timestamp, String path, Object response, Object cursor,
+                     Boolean hasNext, Long total) {
+        this.status = status;
+        this.error = error;
+        this.timestamp = timestamp;
+        this.path = path;
+        this.response = response;
+        this.cursor = cursor;
+        this.hasNext = hasNext;
+        this.total = total;
+    }
+
+    // Writes the fields in a fixed order without bean introspection; collections are written element by element
+    // and their count is taken from the number of written elements
+    static class Serializer extends StdSerializer<ResponseEnvelope> {
+
+        Serializer() {
+            super(ResponseEnvelope.class);
+        }
+
+        @Override
+        public void serialize(ResponseEnvelope envelope, JsonGenerator generator, SerializerProvider provider) throws IOException {
+            generator.writeStartObject();
+            generator.writeNumberField("status", envelope.status);
+            if (envelope.error != null) {
+                generator.writeStringField("error", envelope.error);
+                generator.writeStringField("timestamp", envelope.timestamp);
+                if (envelope.path != null) generator.writeStringField("path", envelope.path);
+            }
+            if (envelope.response instanceof Collection) {
+                generator.writeFieldName("response");
+                generator.writeStartArray();
+                int count = 0;
+                for (Object item : (Collection<?>) envelope.response) {
+                    provider.defaultSerializeValue(item, generator);
+                    count++;
+                }
+                generator.writeEndArray();
+                generator.writeNumberField("count", count);
+            } else if (envelope.response != null) {
+                provider.defaultSerializeField("response", envelope.response, generator);
+            }
+            if (envelope.hasNext != null) {
+                generator.writeBooleanField("hasNext", envelope.hasNext);
+            }
+            if (envelope.total != null) {
+                generator.writeNumberField("total", envelope.total);
+            }
+            if (envelope.cursor != null) {
+                provider.defaultSerializeField("cursor", envelope.cursor, generator);
+            }
+            generator.writeEndObject();
+        }
+    }
+}
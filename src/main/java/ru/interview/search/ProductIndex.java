@@ -0,0 +1,546 @@
+package ru.interview.search;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.interview.dto.ProductSearchCursor;
+import ru.interview.dto.ProductView;
+import ru.interview.entity.ChangeEvent;
+import ru.interview.entity.Product;
+import ru.interview.repository.ProductRepository;
+import ru.interview.service.ChangeFeedService;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// Columnar copy of the catalog for /product/search. Every product takes a slot in primitive arrays, so filters are
+// checked slot by slot without touching objects, and the id, name and price orders are sorted slot permutations
+// sorted once after the load and then kept sorted by binary search on every change. Changes are taken from the change
+// feed, so writes on every instance reach the index, and it is only searched once it reflects the catalog version
+@Component
+@ConditionalOnProperty("app.search.index.enabled")
+public class ProductIndex implements MeterBinder, InitializingBean, DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(ProductIndex.class);
+
+    private static final List<String> SORTS = List.of("id", "name", "price");
+    private static final int BY_ID = 0;
+    private static final int BY_NAME = 1;
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int LOAD_BATCH_SIZE = 1000;
+    private static final int NO_QUANTITY = Integer.MIN_VALUE;
+    private static final long LOADED_VERSION = -1;
+    private static final Comparator<String> NAME_ORDER = Comparator.nullsLast(Comparator.naturalOrder());
+
+    private final ProductRepository productRepository;
+    private final ChangeFeedService changeFeedService;
+    private final TransactionTemplate transactionTemplate;
+    private final Duration refreshInterval;
+    private final AtomicBoolean catchUpRequested = new AtomicBoolean();
+    private final Runnable wakeUp = this::requestCatchUp;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // Signalled after every load and catch-up, apart from their monitor so that a waiting search never queues behind one
+    private final Object progress = new Object();
+
+    // Guarded by lock
+    private final Map<Long, Integer> slots = new HashMap<>();
+    private final Deque<Integer> freeSlots = new ArrayDeque<>();
+    private final BitSet live = new BitSet();
+    private final BitSet inStock = new BitSet();
+    private int used;
+    private long[] ids;
+    private long[] versions;
+    private String[] names;
+    private String[] lowerNames;
+    private String[] descriptions;
+    private double[] prices;
+    private int[] quantities;
+    private int[][] orders;
+    private boolean ordered;
+
+    private volatile boolean ready;
+    private volatile long position;
+    private volatile long catalogVersion;
+    private ScheduledExecutorService refresher;
+
+    @Autowired
+    public ProductIndex(ProductRepository productRepository,
+                        ChangeFeedService changeFeedService,
+                        PlatformTransactionManager transactionManager,
+                        @Value("${app.search.index.refresh-interval:1s}") Duration refreshInterval) {
+        this.productRepository = productRepository;
+        this.changeFeedService = changeFeedService;
+        // Changes are read after they are sequenced, rows are read back on the primary
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.refreshInterval = refreshInterval;
+        clear();
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "product-index-refresher");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public void destroy() {
+        if (refresher != null) {
+            refresher.shutdownNow();
+        }
+    }
+
+    // A failed load or catch-up is retried by the next refresh, search uses the database meanwhile
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        load();
+        refresher.scheduleWithFixedDelay(this::refresh, refreshInterval.toMillis(), refreshInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    // The catalog version and head position are read in the same transaction before the catalog, so the loaded rows
+    // reflect every change they count and catching up continues from the head
+    public synchronized void load() {
+        long started = System.nanoTime();
+        withWriteLock(() -> {
+            ready = false;
+            clear();
+        });
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                long version = changeFeedService.readCatalogVersion();
+                long head = changeFeedService.readPosition();
+                List<ProductView> batch = new ArrayList<>(LOAD_BATCH_SIZE);
+                try (Stream<ProductView> products = productRepository.streamViews(null, ProductView.FIELDS)) {
+                    products.forEach(product -> {
+                        batch.add(product);
+                        if (batch.size() == LOAD_BATCH_SIZE) {
+                            putLoaded(batch);
+                            batch.clear();
+                        }
+                    });
+                }
+                putLoaded(batch);
+                position = head;
+                catalogVersion = version;
+            });
+            withWriteLock(this::sortOrders);
+            ready = true;
+            log.info("Product search index loaded {} products in {} ms", size(), (System.nanoTime() - started) / 1_000_000);
+        } catch (RuntimeException e) {
+            log.warn("Could not load the product search index, search will use the database until it is reloaded", e);
+        }
+        awaitChanges();
+        signalProgress();
+    }
+
+    private void putLoaded(List<ProductView> products) {
+        withWriteLock(() -> products.forEach(product -> put(product.getId(), LOADED_VERSION, product.getName(),
+                product.getDescription(), product.getPrice(), product.getQuantity(), product.getInStock())));
+    }
+
+    // Applies product changes sequenced since the last catch-up, every batch of them is read back with one query
+    synchronized void catchUp() {
+        if (!ready) {
+            return;
+        }
+        try {
+            boolean more = true;
+            while (more) {
+                more = Boolean.TRUE.equals(transactionTemplate.execute(status -> applyChanges()));
+            }
+        } catch (RuntimeException e) {
+            log.warn("Could not apply product changes to the search index, search will use the database until they are", e);
+        }
+        awaitChanges();
+        signalProgress();
+    }
+
+    // Every change up to the head is sequenced and committed, so once fewer changes than a batch come back
+    // the index has caught up with the head. It reflects the catalog version read first if by then every product
+    // change was sequenced, otherwise the rest is applied once the sequencer has numbered them
+    private boolean applyChanges() {
+        long version = changeFeedService.readCatalogVersion();
+        boolean sequenced = !changeFeedService.hasUnsequenced(ChangeEvent.PRODUCT);
+        long head = changeFeedService.readPosition();
+        List<ChangeEvent> changes = changeFeedService.getChangesAfter(position, ChangeEvent.PRODUCT, LOAD_BATCH_SIZE);
+        Set<Long> ids = changes.stream().map(ChangeEvent::getEntityId).collect(Collectors.toSet());
+        Map<Long, Product> products = productRepository.findAllById(ids).stream()
+                .collect(Collectors.toMap(Product::getId, Function.identity()));
+        boolean full = changes.size() == LOAD_BATCH_SIZE;
+        long caughtUp = full ? changes.get(changes.size() - 1).getPosition() : Math.max(head, position);
+        withWriteLock(() -> {
+            for (Long id : ids) {
+                Product product = products.get(id);
+                if (product != null) {
+                    put(id, product.getVersion(), product.getName(), product.getDescription(), product.getPrice(),
+                            product.getQuantity(), product.getInStock());
+                } else {
+                    remove(id);
+                }
+            }
+            position = caughtUp;
+            if (!full && sequenced) {
+                catalogVersion = version;
+            }
+        });
+        return full;
+    }
+
+    private void refresh() {
+        if (ready) {
+            catchUp();
+        } else {
+            load();
+        }
+    }
+
+    private void awaitChanges() {
+        if (ready) {
+            changeFeedService.onChangesAfter(position, wakeUp);
+        }
+    }
+
+    // Coalesced, so a burst of sequenced changes is applied by one catch-up
+    private void requestCatchUp() {
+        if (refresher == null || !catchUpRequested.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            refresher.execute(() -> {
+                catchUpRequested.set(false);
+                refresh();
+            });
+        } catch (RejectedExecutionException e) {
+            catchUpRequested.set(false);
+        }
+    }
+
+    // Sorting by id, name or price, ascending and optionally followed by id. A search after a write must see it,
+    // so the index stays out of use until it reflects the catalog version read for the search
+    public boolean canSearch(Pageable pageable, long catalogVersion) {
+        if (!ready || this.catalogVersion < catalogVersion) {
+            return false;
+        }
+        if (pageable == null || pageable.getSort().isUnsorted()) {
+            return true;
+        }
+        List<Sort.Order> sort = pageable.getSort().toList();
+        return sort.stream().allMatch(order -> order.isAscending() && !order.isIgnoreCase())
+                && SORTS.contains(sort.get(0).getProperty())
+                && (sort.size() == 1 || sort.size() == 2 && sort.get(1).getProperty().equals("id"));
+    }
+
+    // For a search that the index should continue: a write reaches it as soon as the sequencer numbers it, so the
+    // wait for the running or next catch-up is bounded by the refresh interval, and the caller falls back after it
+    public boolean awaitSearchable(Pageable pageable, long catalogVersion) {
+        long deadline = System.nanoTime() + refreshInterval.toNanos();
+        synchronized (progress) {
+            try {
+                for (long left = refreshInterval.toMillis(); !canSearch(pageable, catalogVersion) && left > 0;
+                     left = (deadline - System.nanoTime()) / 1_000_000) {
+                    progress.wait(left);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return canSearch(pageable, catalogVersion);
+    }
+
+    private void signalProgress() {
+        synchronized (progress) {
+            progress.notifyAll();
+        }
+    }
+
+    public Slice<ProductView> search(String name, Double minPrice, Double maxPrice, Boolean inStock,
+                                     ProductSearchCursor after, Pageable pageable, List<String> fields) {
+        String lowerName = name == null || name.isEmpty() ? null : name.toLowerCase(Locale.ROOT);
+        Pageable page = pageable == null ? Pageable.unpaged() : pageable;
+        lock.readLock().lock();
+        try {
+            int sort = page.getSort().isSorted() ? SORTS.indexOf(page.getSort().iterator().next().getProperty()) : BY_ID;
+            int[] order = orders[sort];
+            int size = slots.size();
+            long skip = page.isPaged() ? page.getOffset() : 0;
+            int limit = page.isPaged() ? page.getPageSize() + 1 : Integer.MAX_VALUE;
+            List<ProductView> views = new ArrayList<>();
+            for (int i = after == null ? 0 : startAfter(order, size, sort, after); i < size && views.size() < limit; i++) {
+                int slot = order[i];
+                if (matches(slot, lowerName, minPrice, maxPrice, inStock) && skip-- <= 0) {
+                    views.add(view(slot, fields));
+                }
+            }
+            if (page.isUnpaged()) {
+                return new SliceImpl<>(views);
+            }
+            boolean hasNext = views.size() > page.getPageSize();
+            return new SliceImpl<>(hasNext ? views.subList(0, page.getPageSize()) : views, page, hasNext);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long count(String name, Double minPrice, Double maxPrice, Boolean inStock) {
+        String lowerName = name == null || name.isEmpty() ? null : name.toLowerCase(Locale.ROOT);
+        lock.readLock().lock();
+        try {
+            long count = 0;
+            for (int slot = live.nextSetBit(0); slot >= 0; slot = live.nextSetBit(slot + 1)) {
+                if (matches(slot, lowerName, minPrice, maxPrice, inStock)) count++;
+            }
+            return count;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Slots ever taken, a removed product's slot is reused by the next one added
+    int usedSlots() {
+        lock.readLock().lock();
+        try {
+            return used;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return slots.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("app.search.index.size", this, ProductIndex::size)
+                .description("Products in the in-memory search index")
+                .register(registry);
+    }
+
+    // NaN prices fail both bounds, as NULL does in SQL
+    private boolean matches(int slot, String lowerName, Double minPrice, Double maxPrice, Boolean inStock) {
+        if (inStock != null && this.inStock.get(slot) != inStock) return false;
+        if (minPrice != null && !(prices[slot] >= minPrice)) return false;
+        if (maxPrice != null && !(prices[slot] <= maxPrice)) return false;
+        return lowerName == null || lowerNames[slot].contains(lowerName);
+    }
+
+    private int compare(int sort, int a, int b) {
+        int result = sort == BY_ID ? 0 : sort == BY_NAME
+                ? NAME_ORDER.compare(names[a], names[b])
+                : Double.compare(prices[a], prices[b]);
+        return result != 0 ? result : Long.compare(ids[a], ids[b]);
+    }
+
+    // First position after the cursor's (value, id), prices without a value sort last as NaN
+    private int startAfter(int[] order, int size, int sort, ProductSearchCursor cursor) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            int slot = order[mid];
+            int result = sort == BY_NAME
+                    ? NAME_ORDER.compare(names[slot], (String) cursor.getValue())
+                    : Double.compare(prices[slot], cursor.getValue() == null ? Double.NaN : (Double) cursor.getValue());
+            if (result == 0) result = Long.compare(ids[slot], cursor.getId());
+            if (result <= 0) low = mid + 1;
+            else high = mid;
+        }
+        return low;
+    }
+
+    private ProductView view(int slot, List<String> fields) {
+        ProductView.ProductViewBuilder view = ProductView.builder();
+        for (String field : fields) {
+            switch (field) {
+                case "id": view.id(ids[slot]); break;
+                case "name": view.name(names[slot]); break;
+                case "description": view.description(descriptions[slot]); break;
+                case "price": view.price(Double.isNaN(prices[slot]) ? null : prices[slot]); break;
+                case "quantity": view.quantity(quantities[slot] == NO_QUANTITY ? null : quantities[slot]); break;
+                case "inStock": view.inStock(inStock.get(slot)); break;
+                default: throw new IllegalArgumentException("Unknown product field " + field);
+            }
+        }
+        return view.build();
+    }
+
+    private void put(long id, long version, String name, String description, Double price, Integer quantity, Boolean inStock) {
+        Integer slot = slots.get(id);
+        if (slot != null && version < versions[slot]) {
+            // A newer row was applied already by a change that committed later
+            return;
+        }
+        if (slot == null) {
+            slot = freeSlots.isEmpty() ? used++ : freeSlots.pop();
+            ensureCapacity(used);
+        } else {
+            unorder(slot);
+        }
+        ids[slot] = id;
+        versions[slot] = version;
+        names[slot] = name;
+        lowerNames[slot] = name == null ? "" : name.toLowerCase(Locale.ROOT);
+        descriptions[slot] = description;
+        prices[slot] = price == null ? Double.NaN : price;
+        quantities[slot] = quantity == null ? NO_QUANTITY : quantity;
+        this.inStock.set(slot, Boolean.TRUE.equals(inStock));
+        if (!live.get(slot)) {
+            slots.put(id, slot);
+            live.set(slot);
+        }
+        order(slot);
+    }
+
+    // Changes are applied from the rows read back, not from event payloads, so a late event of a removed product
+    // finds no row and can not bring it back
+    private void remove(long id) {
+        Integer slot = slots.get(id);
+        if (slot == null) {
+            return;
+        }
+        unorder(slot);
+        slots.remove(id);
+        live.clear(slot);
+        inStock.clear(slot);
+        names[slot] = null;
+        lowerNames[slot] = null;
+        descriptions[slot] = null;
+        freeSlots.push(slot);
+    }
+
+    // Moves the later slots one place up, which costs a copy of the tail rather than a sort of the whole catalog
+    private void order(int slot) {
+        if (!ordered) {
+            return;
+        }
+        int size = slots.size() - 1;
+        for (int sort = 0; sort < orders.length; sort++) {
+            int[] order = orders[sort];
+            int index = position(order, size, sort, slot);
+            System.arraycopy(order, index, order, index + 1, size - index);
+            order[index] = slot;
+        }
+    }
+
+    // Called before the slot's values change, while its position can still be found by them
+    private void unorder(int slot) {
+        if (!ordered) {
+            return;
+        }
+        int size = slots.size();
+        for (int sort = 0; sort < orders.length; sort++) {
+            int[] order = orders[sort];
+            int index = position(order, size, sort, slot);
+            System.arraycopy(order, index + 1, order, index, size - index - 1);
+        }
+    }
+
+    private int position(int[] order, int size, int sort, int slot) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compare(sort, order[mid], slot) < 0) low = mid + 1;
+            else high = mid;
+        }
+        return low;
+    }
+
+    // The load adds products in bulk, so they are sorted once at its end instead of being inserted one by one
+    private void sortOrders() {
+        for (int sort = 0; sort < orders.length; sort++) {
+            int by = sort;
+            int[] order = live.stream().boxed().sorted((a, b) -> compare(by, a, b)).mapToInt(Integer::intValue).toArray();
+            orders[sort] = Arrays.copyOf(order, ids.length);
+        }
+        ordered = true;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= ids.length) {
+            return;
+        }
+        int length = Math.max(capacity, ids.length * 2);
+        ids = Arrays.copyOf(ids, length);
+        versions = Arrays.copyOf(versions, length);
+        names = Arrays.copyOf(names, length);
+        lowerNames = Arrays.copyOf(lowerNames, length);
+        descriptions = Arrays.copyOf(descriptions, length);
+        prices = Arrays.copyOf(prices, length);
+        quantities = Arrays.copyOf(quantities, length);
+        for (int sort = 0; sort < orders.length; sort++) {
+            orders[sort] = Arrays.copyOf(orders[sort], length);
+        }
+    }
+
+    private void clear() {
+        slots.clear();
+        freeSlots.clear();
+        live.clear();
+        inStock.clear();
+        used = 0;
+        ids = new long[INITIAL_CAPACITY];
+        versions = new long[INITIAL_CAPACITY];
+        names = new String[INITIAL_CAPACITY];
+        lowerNames = new String[INITIAL_CAPACITY];
+        descriptions = new String[INITIAL_CAPACITY];
+        prices = new double[INITIAL_CAPACITY];
+        quantities = new int[INITIAL_CAPACITY];
+        orders = new int[SORTS.size()][INITIAL_CAPACITY];
+        ordered = false;
+    }
+
+    private void withWriteLock(Runnable action) {
+        lock.writeLock().lock();
+        try {
+            action.run();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+}
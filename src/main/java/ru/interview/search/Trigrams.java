@@ -0,0 +1,44 @@
+package ru.interview.search;
+
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+public final class Trigrams {
+
+    private Trigrams() {
+    }
+
+    public static Set<String> of(String text) {
+        Set<String> trigrams = new HashSet<>();
+        if (text == null) return trigrams;
+
+        StringBuilder word = new StringBuilder();
+        String lowerCase = text.toLowerCase(Locale.ROOT);
+        for (int i = 0; i <= lowerCase.length(); i++) {
+            char c = i < lowerCase.length() ? lowerCase.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                word.append(c);
+            } else if (word.length() > 0) {
+                String padded = "  " + word + " ";
+                for (int j = 0; j + 3 <= padded.length(); j++) {
+                    trigrams.add(padded.substring(j, j + 3));
+                }
+                word.setLength(0);
+            }
+        }
+        return trigrams;
+    }
+
+    public static double similarity(String left, String right) {
+        Set<String> leftTrigrams = of(left);
+        Set<String> rightTrigrams = of(right);
+        if (leftTrigrams.isEmpty() || rightTrigrams.isEmpty()) return 0.0;
+
+        int common = 0;
+        for (String trigram : leftTrigrams) {
+            if (rightTrigrams.contains(trigram)) common++;
+        }
+        return (double) common / (leftTrigrams.size() + rightTrigrams.size() - common);
+    }
+}
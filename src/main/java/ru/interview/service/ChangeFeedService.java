@@ -0,0 +1,267 @@
+package ru.interview.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.interview.entity.CatalogVersion;
+import ru.interview.entity.ChangeEvent;
+import ru.interview.entity.ChangeFeedHead;
+import ru.interview.repository.CatalogVersionRepository;
+import ru.interview.repository.ChangeEventRepository;
+import ru.interview.repository.ChangeFeedHeadRepository;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Outbox of product, sale and supply changes. Writers append events inside their own transaction; a background
+// sequencer then numbers committed events under the head row lock and wakes long-polling consumers
+@Service
+public class ChangeFeedService implements InitializingBean, DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(ChangeFeedService.class);
+    private static final int NOTIFIER_THREADS = 4;
+
+    private final ChangeEventRepository changeEventRepository;
+    private final ChangeFeedHeadRepository changeFeedHeadRepository;
+    private final CatalogVersionRepository catalogVersionRepository;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final Duration sequenceInterval;
+    private final Duration retention;
+    private final int batchSize;
+    private final Map<Runnable, Long> waiters = new ConcurrentHashMap<>();
+    private final AtomicBoolean tickRequested = new AtomicBoolean();
+
+    private volatile long lastPosition = -1;
+    private ScheduledExecutorService sequencer;
+    private ExecutorService notifierPool;
+    // Runs callbacks inline until the bean is started
+    private Executor notifier = Runnable::run;
+
+    @Autowired
+    public ChangeFeedService(ChangeEventRepository changeEventRepository,
+                             ChangeFeedHeadRepository changeFeedHeadRepository,
+                             CatalogVersionRepository catalogVersionRepository,
+                             ObjectMapper objectMapper,
+                             PlatformTransactionManager transactionManager,
+                             @Value("${app.changes.sequence-interval:200ms}") Duration sequenceInterval,
+                             @Value("${app.changes.retention:7d}") Duration retention,
+                             @Value("${app.changes.batch-size:500}") int batchSize) {
+        this.changeEventRepository = changeEventRepository;
+        this.changeFeedHeadRepository = changeFeedHeadRepository;
+        this.catalogVersionRepository = catalogVersionRepository;
+        this.objectMapper = objectMapper;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.sequenceInterval = sequenceInterval;
+        this.retention = retention;
+        this.batchSize = batchSize;
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void append(String entity, Long entityId, ChangeEvent.Type type, Object payload) {
+        ChangeEvent event = new ChangeEvent();
+        event.setEntity(entity);
+        event.setEntityId(entityId);
+        event.setType(type);
+        event.setCreatedAt(LocalDateTime.now());
+        try {
+            event.setPayload(payload == null ? null : objectMapper.writeValueAsString(payload));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize " + entity + " " + entityId + " for the change feed", e);
+        }
+        changeEventRepository.save(event);
+        // Sequenced right after the commit rather than on the next scheduled tick, so consumers hear of it soon
+        AtomicBoolean productChanged = (AtomicBoolean) TransactionSynchronizationManager.getResource(this);
+        if (productChanged == null) {
+            AtomicBoolean changed = new AtomicBoolean();
+            TransactionSynchronizationManager.bindResource(this, changed);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                // Bumped last, so the version row is only locked while the transaction commits
+                @Override
+                public void beforeCommit(boolean readOnly) {
+                    if (changed.get()) {
+                        incrementCatalogVersion();
+                    }
+                }
+
+                @Override
+                public void afterCommit() {
+                    requestTick();
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(ChangeFeedService.this);
+                }
+            });
+            productChanged = changed;
+        }
+        if (ChangeEvent.PRODUCT.equals(entity)) {
+            productChanged.set(true);
+        }
+    }
+
+    private void incrementCatalogVersion() {
+        if (catalogVersionRepository.increment(CatalogVersion.ID) == 0) {
+            catalogVersionRepository.saveAndFlush(new CatalogVersion(CatalogVersion.ID, 1));
+        }
+    }
+
+    // Last sequenced position as read on the primary, every change up to it is committed
+    public long getPosition() {
+        return lastPosition;
+    }
+
+    // Catalog version as seen by the current transaction. Sale and supply documents only move it when they change
+    // the stock, and data read after it reflects every product change it counts
+    @Transactional(readOnly = true)
+    public long readCatalogVersion() {
+        return catalogVersionRepository.findVersion(CatalogVersion.ID).orElse(0L);
+    }
+
+    // A committed change of the entity may still be waiting for its position
+    @Transactional(readOnly = true)
+    public boolean hasUnsequenced(String entity) {
+        return changeEventRepository.existsByEntityAndPositionIsNull(entity);
+    }
+
+    // Head position as seen by the current transaction
+    @Transactional(readOnly = true)
+    public long readPosition() {
+        return changeFeedHeadRepository.findPosition(ChangeFeedHead.ID).orElse(0L);
+    }
+
+    // Right after a notification a replica may not have the new positions yet, so a woken consumer reads them here
+    public List<ChangeEvent> getChangesAfterOnPrimary(long after, String entity, int limit) {
+        return transactionTemplate.execute(status -> getChangesAfter(after, entity, limit));
+    }
+
+    @Transactional(readOnly = true)
+    public List<ChangeEvent> getChangesAfter(long after, String entity, int limit) {
+        // Separate queries for the whole feed and for one entity, so each of them gets a plan using its own index
+        return entity == null
+                ? changeEventRepository.findByPositionGreaterThanOrderByPosition(after, PageRequest.of(0, limit))
+                : changeEventRepository.findByEntityAndPositionGreaterThanOrderByPosition(entity, after, PageRequest.of(0, limit));
+    }
+
+    // Runs the callback once an event past the offset is sequenced; the returned handle unregisters it
+    public Runnable onChangesAfter(long after, Runnable callback) {
+        waiters.put(callback, after);
+        if (lastPosition > after && waiters.remove(callback) != null) {
+            callback.run();
+        }
+        return () -> waiters.remove(callback);
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        sequencer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "change-feed-sequencer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Woken consumers query the database, which must not hold up sequencing
+        notifierPool = Executors.newFixedThreadPool(NOTIFIER_THREADS, runnable -> {
+            Thread thread = new Thread(runnable, "change-feed-notifier");
+            thread.setDaemon(true);
+            return thread;
+        });
+        notifier = notifierPool;
+        sequencer.scheduleWithFixedDelay(this::tick, 0, sequenceInterval.toMillis(), TimeUnit.MILLISECONDS);
+        sequencer.scheduleWithFixedDelay(this::deleteExpired, 1, 60, TimeUnit.MINUTES);
+    }
+
+    @Override
+    public void destroy() {
+        if (sequencer != null) {
+            sequencer.shutdownNow();
+        }
+        if (notifierPool != null) {
+            notifierPool.shutdownNow();
+        }
+    }
+
+    // Sequences committed events and wakes the consumers waiting for them, normally on the sequencer thread
+    public void tick() {
+        try {
+            sequence();
+            Long position = transactionTemplate.execute(status ->
+                    changeFeedHeadRepository.findPosition(ChangeFeedHead.ID).orElse(0L));
+            lastPosition = position == null ? 0 : position;
+            waiters.forEach((callback, after) -> {
+                if (lastPosition > after && waiters.remove(callback) != null) {
+                    notifier.execute(callback);
+                }
+            });
+        } catch (RuntimeException e) {
+            log.warn("Could not sequence change events", e);
+        }
+    }
+
+    private void requestTick() {
+        if (sequencer == null || !tickRequested.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            sequencer.execute(() -> {
+                tickRequested.set(false);
+                tick();
+            });
+        } catch (RejectedExecutionException e) {
+            tickRequested.set(false);
+        }
+    }
+
+    // Only committed events are visible here, and positions become visible together when this transaction commits,
+    // so they follow commit order on every instance. Runs on the primary, a lagging replica would only delay it
+    int sequence() {
+        Integer sequenced = transactionTemplate.execute(status -> {
+            if (!changeEventRepository.existsByPositionIsNull()) {
+                return 0;
+            }
+            ChangeFeedHead head = changeFeedHeadRepository.findForUpdate(ChangeFeedHead.ID)
+                    .orElseGet(() -> changeFeedHeadRepository.saveAndFlush(new ChangeFeedHead(ChangeFeedHead.ID)));
+            List<ChangeEvent> events = changeEventRepository.findUnsequenced(PageRequest.of(0, batchSize));
+            long position = head.getPosition();
+            for (ChangeEvent event : events) {
+                event.setPosition(++position);
+            }
+            head.setPosition(position);
+            return events.size();
+        });
+        return sequenced == null ? 0 : sequenced;
+    }
+
+    private void deleteExpired() {
+        try {
+            Integer deleted = transactionTemplate.execute(status ->
+                    changeEventRepository.deleteSequencedBefore(LocalDateTime.now().minus(retention)));
+            log.debug("Deleted {} expired change events", deleted);
+        } catch (RuntimeException e) {
+            log.warn("Could not delete expired change events", e);
+        }
+    }
+}
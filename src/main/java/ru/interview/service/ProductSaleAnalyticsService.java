@@ -0,0 +1,116 @@
+package ru.interview.service;
+
+import io.micrometer.core.annotation.Timed;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import ru.interview.dto.ProductSalesDay;
+import ru.interview.dto.ProductSalesTotal;
+import ru.interview.entity.ProductSale;
+import ru.interview.entity.ProductSaleDaily;
+import ru.interview.entity.ProductSaleUndated;
+import ru.interview.exception.ProductValidationException;
+import ru.interview.repository.ProductSaleDailyRepository;
+import ru.interview.repository.ProductSaleUndatedRepository;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+@Service
+@Timed("app.service")
+public class ProductSaleAnalyticsService {
+
+    static final int DEFAULT_PERIOD_DAYS = 30;
+
+    private final ProductSaleDailyRepository productSaleDailyRepository;
+    private final ProductSaleUndatedRepository productSaleUndatedRepository;
+
+    @Autowired
+    public ProductSaleAnalyticsService(ProductSaleDailyRepository productSaleDailyRepository,
+                                       ProductSaleUndatedRepository productSaleUndatedRepository) {
+        this.productSaleDailyRepository = productSaleDailyRepository;
+        this.productSaleUndatedRepository = productSaleUndatedRepository;
+    }
+
+    @Transactional
+    public void recordSales(List<ProductSale> productSales) {
+        Map<ProductSaleDaily.Key, ProductSaleDaily> changes = new TreeMap<>(
+                Comparator.comparing(ProductSaleDaily.Key::getProductId).thenComparing(ProductSaleDaily.Key::getSaleDate));
+        for (ProductSale productSale : productSales) {
+            ProductSaleDaily.Key key = new ProductSaleDaily.Key(productSale.getProduct().getId(),
+                    productSale.getSoldAt().toLocalDate());
+            ProductSaleDaily change = changes.computeIfAbsent(key,
+                    k -> new ProductSaleDaily(k.getProductId(), k.getSaleDate(), 0L, 0.0));
+            change.setUnits(change.getUnits() + productSale.getQuantity());
+            change.setRevenue(change.getRevenue() + revenue(productSale.getQuantity(), productSale.getPurchasePrice()));
+        }
+        changes.values().forEach(change -> add(change.getProductId(), change.getSaleDate(), change.getUnits(), change.getRevenue()));
+    }
+
+    // A negative quantity takes a sale out of the rollup when its document is changed or deleted,
+    // sales recorded before they had a date stay in the undated bucket
+    @Transactional
+    public void recordChange(Long productId, LocalDateTime soldAt, int quantity, Double purchasePrice) {
+        if (soldAt != null) {
+            add(productId, soldAt.toLocalDate(), quantity, revenue(quantity, purchasePrice));
+        } else if (productSaleUndatedRepository.add(productId, quantity, revenue(quantity, purchasePrice)) == 0) {
+            productSaleUndatedRepository.save(new ProductSaleUndated(productId, (long) quantity, revenue(quantity, purchasePrice)));
+        }
+    }
+
+    // Callers change the stock of the same product first, so the product row lock is held here
+    // and two documents can not both miss the row and insert it
+    private void add(Long productId, LocalDate saleDate, long units, double revenue) {
+        if (productSaleDailyRepository.add(productId, saleDate, units, revenue) == 0) {
+            productSaleDailyRepository.save(new ProductSaleDaily(productId, saleDate, units, revenue));
+        }
+    }
+
+    @Transactional(readOnly = true)
+    public List<ProductSalesTotal> getTotals(LocalDate from, LocalDate to, int page, int size) {
+        LocalDate end = endOf(to);
+        return productSaleDailyRepository.findTotals(startOf(from, end), end, PageRequest.of(page, size));
+    }
+
+    @Transactional(readOnly = true)
+    public List<ProductSalesTotal> getTopSellers(LocalDate from, LocalDate to, int limit, String by) {
+        LocalDate end = endOf(to);
+        LocalDate start = startOf(from, end);
+        if ("revenue".equals(by)) {
+            return productSaleDailyRepository.findTopByRevenue(start, end, PageRequest.of(0, limit));
+        } else if ("units".equals(by)) {
+            return productSaleDailyRepository.findTopByUnits(start, end, PageRequest.of(0, limit));
+        }
+        throw new ProductValidationException("Top sellers can be ranked by revenue or units. The current value is '" + by + "'.");
+    }
+
+    @Transactional(readOnly = true)
+    public List<ProductSalesDay> getDailySales(Long productId, LocalDate from, LocalDate to) {
+        LocalDate end = endOf(to);
+        LocalDate start = startOf(from, end);
+        return productId == null
+                ? productSaleDailyRepository.findDaily(start, end)
+                : productSaleDailyRepository.findDailyByProduct(productId, start, end);
+    }
+
+    private static LocalDate endOf(LocalDate to) {
+        return to == null ? LocalDate.now() : to;
+    }
+
+    private static LocalDate startOf(LocalDate from, LocalDate to) {
+        LocalDate start = from == null ? to.minusDays(DEFAULT_PERIOD_DAYS - 1) : from;
+        if (start.isAfter(to)) {
+            throw new ProductValidationException("Period start " + start + " is after its end " + to);
+        }
+        return start;
+    }
+
+    private static double revenue(int quantity, Double purchasePrice) {
+        return purchasePrice == null ? 0.0 : quantity * purchasePrice;
+    }
+}
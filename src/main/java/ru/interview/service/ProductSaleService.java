@@ -1,41 +1,72 @@
 package ru.interview.service;
 
+import io.micrometer.core.annotation.Timed;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import ru.interview.entity.Product;
+import ru.interview.dto.ProductSaleView;
+import ru.interview.entity.ChangeEvent;
 import ru.interview.entity.ProductSale;
 import ru.interview.exception.ProductNotFoundException;
 import ru.interview.exception.ProductValidationException;
 import ru.interview.repository.ProductSaleRepository;
 
-import javax.transaction.Transactional;
 import javax.validation.ConstraintViolation;
 import javax.validation.Validator;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 @Service
+@Timed("app.service")
 public class ProductSaleService {
 
     private final ProductSaleRepository productSaleRepository;
     private final ProductService productService;
+    private final ChangeFeedService changeFeedService;
+    private final ProductSaleAnalyticsService productSaleAnalyticsService;
     private final Validator validator;
 
     @Autowired
     public ProductSaleService(
             ProductSaleRepository productSaleRepository,
             ProductService productService,
+            ChangeFeedService changeFeedService,
+            ProductSaleAnalyticsService productSaleAnalyticsService,
             Validator validator
     ) {
         this.productSaleRepository = productSaleRepository;
         this.productService = productService;
+        this.changeFeedService = changeFeedService;
+        this.productSaleAnalyticsService = productSaleAnalyticsService;
         this.validator = validator;
     }
 
-    public List<ProductSale> getAllProductSales() {
-        return productSaleRepository.findAll();
+    @Transactional(readOnly = true)
+    public List<ProductSaleView> getProductSalesAfter(Long afterId, int limit, boolean productIdOnly) {
+        Long after = afterId == null ? 0L : afterId;
+        return productIdOnly
+                ? productSaleRepository.findNextPageWithProductIds(after, PageRequest.of(0, limit))
+                : productSaleRepository.findNextPage(after, PageRequest.of(0, limit));
     }
 
+    @Transactional(readOnly = true)
+    public void forEachProductSale(boolean productIdOnly, Consumer<ProductSaleView> consumer) {
+        try (Stream<ProductSaleView> productSales = productIdOnly
+                ? productSaleRepository.streamAllWithProductIds()
+                : productSaleRepository.streamAll()) {
+            productSales.forEach(consumer);
+        }
+    }
+
+    @Transactional(readOnly = true)
     public ProductSale getProductSaleById(Long id) {
         return productSaleRepository.findById(id)
                 .orElseThrow(() -> new ProductNotFoundException("Product sale with id " + id + " not found"));
@@ -48,11 +79,48 @@ public class ProductSaleService {
             throw new ProductValidationException(violations);
         }
         productSale.setId(null);
+        productSale.setSoldAt(LocalDateTime.now());
 
-        Product product = productService.getProductById(productSale.getProduct().getId());
-        product.setInStock(false);
+        Product product = productService.adjustQuantity(productSale.getProduct().getId(), -productSale.getQuantity());
         productSale.setProduct(product);
-        return productSaleRepository.save(productSale);
+        productSaleAnalyticsService.recordSales(List.of(productSale));
+        ProductSale saved = productSaleRepository.save(productSale);
+        changeFeedService.append(ChangeEvent.PRODUCT_SALE, saved.getId(), ChangeEvent.Type.CREATED, saved);
+        return saved;
+    }
+
+    @Transactional
+    public List<ProductSale> addProductSales(List<ProductSale> productSales) {
+        List<String> errors = new ArrayList<>();
+        for (int i = 0; i < productSales.size(); i++) {
+            ProductSale productSale = productSales.get(i);
+            for (ConstraintViolation<ProductSale> violation : validator.validate(productSale)) {
+                errors.add("[" + i + "]." + violation.getPropertyPath() + ": " + violation.getMessage());
+            }
+            if (productSale.getProduct() != null && productSale.getProduct().getId() == null) {
+                errors.add("[" + i + "].product.id: Product id is mandatory");
+            }
+        }
+        if (!errors.isEmpty()) {
+            throw new ProductValidationException(String.join(", ", errors));
+        }
+
+        Map<Long, Integer> deltas = new HashMap<>();
+        for (ProductSale productSale : productSales) {
+            deltas.merge(productSale.getProduct().getId(), -productSale.getQuantity(), Integer::sum);
+        }
+        Map<Long, Product> products = productService.adjustQuantities(deltas);
+
+        LocalDateTime soldAt = LocalDateTime.now();
+        for (ProductSale productSale : productSales) {
+            productSale.setId(null);
+            productSale.setSoldAt(soldAt);
+            productSale.setProduct(products.get(productSale.getProduct().getId()));
+        }
+        productSaleAnalyticsService.recordSales(productSales);
+        List<ProductSale> saved = productSaleRepository.saveAll(productSales);
+        saved.forEach(item -> changeFeedService.append(ChangeEvent.PRODUCT_SALE, item.getId(), ChangeEvent.Type.CREATED, item));
+        return saved;
     }
 
     @Transactional
@@ -60,26 +128,40 @@ public class ProductSaleService {
         ProductSale existingProduct = productSaleRepository.findById(productSale.getId()).orElseThrow(
                 () -> new ProductNotFoundException("Product sale with id " + productSale.getId() + " not found"));
 
+        Long oldProductId = existingProduct.getProduct().getId();
+        int oldQuantity = existingProduct.getQuantity();
+        Double oldPurchasePrice = existingProduct.getPurchasePrice();
         if (productSale.getDocumentName() != null) existingProduct.setDocumentName(productSale.getDocumentName());
         if (productSale.getPurchasePrice() != null) existingProduct.setPurchasePrice(productSale.getPurchasePrice());
         if (productSale.getQuantity() != null) existingProduct.setQuantity(productSale.getQuantity());
-        if (productSale.getProduct().getId() != null) {
-            Product product = productService.getProductById(productSale.getProduct().getId());
-            existingProduct.setProduct(product);
-        }
+        Long newProductId = productSale.getProduct() != null && productSale.getProduct().getId() != null
+                ? productSale.getProduct().getId()
+                : oldProductId;
 
         Set<ConstraintViolation<ProductSale>> violations = validator.validate(existingProduct);
         if (!violations.isEmpty()) {
             throw new ProductValidationException(violations);
         }
-        return productSaleRepository.save(existingProduct);
+
+        Map<Long, Integer> deltas = new HashMap<>();
+        deltas.put(oldProductId, oldQuantity);
+        deltas.merge(newProductId, -existingProduct.getQuantity(), Integer::sum);
+        existingProduct.setProduct(productService.adjustQuantities(deltas).get(newProductId));
+        productSaleAnalyticsService.recordChange(oldProductId, existingProduct.getSoldAt(), -oldQuantity, oldPurchasePrice);
+        productSaleAnalyticsService.recordChange(newProductId, existingProduct.getSoldAt(),
+                existingProduct.getQuantity(), existingProduct.getPurchasePrice());
+        ProductSale saved = productSaleRepository.save(existingProduct);
+        changeFeedService.append(ChangeEvent.PRODUCT_SALE, saved.getId(), ChangeEvent.Type.UPDATED, saved);
+        return saved;
     }
 
     @Transactional
     public void deleteProductSale(Long id) {
-        if (!productSaleRepository.existsById(id)) {
-            throw new ProductNotFoundException("Product sale with id " + id + " not found");
-        }
-        productSaleRepository.deleteById(id);
+        ProductSale productSale = getProductSaleById(id);
+        productService.adjustQuantity(productSale.getProduct().getId(), productSale.getQuantity());
+        productSaleAnalyticsService.recordChange(productSale.getProduct().getId(), productSale.getSoldAt(),
+                -productSale.getQuantity(), productSale.getPurchasePrice());
+        productSaleRepository.delete(productSale);
+        changeFeedService.append(ChangeEvent.PRODUCT_SALE, id, ChangeEvent.Type.DELETED, null);
     }
 }
\ No newline at end of file
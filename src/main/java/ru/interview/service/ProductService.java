@@ -1,80 +1,353 @@
 package ru.interview.service;
 
+import io.micrometer.core.annotation.Timed;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.Page;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.validation.annotation.Validated;
+import ru.interview.cache.ProductCache;
+import ru.interview.cache.ProductSearchCache;
+import ru.interview.dto.ProductImportResult;
+import ru.interview.dto.ProductSearchCursor;
+import ru.interview.dto.ProductSearchPage;
+import ru.interview.dto.ProductView;
+import ru.interview.entity.ChangeEvent;
 import ru.interview.entity.Product;
+import ru.interview.event.ProductChangedEvent;
 import ru.interview.exception.ProductNotFoundException;
 import ru.interview.exception.ProductValidationException;
 import ru.interview.repository.ProductRepository;
+import ru.interview.repository.ProductSpecifications;
+import ru.interview.search.ProductIndex;
 
+import javax.persistence.EntityManager;
 import javax.validation.ConstraintViolation;
 import javax.validation.Validator;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
+@Timed("app.service")
 @Validated
 public class ProductService {
 
     private final ProductRepository productRepository;
     private final Validator validator;
+    private final EntityManager entityManager;
+    private final ProductCache productCache;
+    private final ProductSearchCache productSearchCache;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ChangeFeedService changeFeedService;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate readOnlyTransactionTemplate;
+    private final ProductIndex productIndex;
+    private final int importBatchSize;
 
     @Autowired
-    public ProductService(ProductRepository productRepository, Validator validator) {
+    public ProductService(ProductRepository productRepository,
+                          Validator validator,
+                          EntityManager entityManager,
+                          ProductCache productCache,
+                          ProductSearchCache productSearchCache,
+                          ApplicationEventPublisher eventPublisher,
+                          ChangeFeedService changeFeedService,
+                          PlatformTransactionManager transactionManager,
+                          Optional<ProductIndex> productIndex,
+                          @Value("${app.import.batch-size:500}") int importBatchSize) {
         this.productRepository = productRepository;
         this.validator = validator;
+        this.entityManager = entityManager;
+        this.productCache = productCache;
+        this.productSearchCache = productSearchCache;
+        this.eventPublisher = eventPublisher;
+        this.changeFeedService = changeFeedService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTransactionTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTransactionTemplate.setReadOnly(true);
+        this.productIndex = productIndex.orElse(null);
+        this.importBatchSize = importBatchSize;
     }
 
-    public List<Product> getAllProducts() {
-        return productRepository.findAll();
+    // Read on a replica once it has caught up with the catalog version, so the page is never older than its ETag;
+    // a lagging replica is skipped in favour of the primary
+    public List<ProductView> getProductsAfter(Long afterId, int limit, List<String> fields) {
+        long catalogVersion = getCatalogVersion();
+        List<ProductView> products = readOnlyTransactionTemplate.execute(status ->
+                changeFeedService.readCatalogVersion() >= catalogVersion ? findProductsAfter(afterId, limit, fields) : null);
+        return products != null ? products : transactionTemplate.execute(status -> findProductsAfter(afterId, limit, fields));
     }
 
+    private List<ProductView> findProductsAfter(Long afterId, int limit, List<String> fields) {
+        return productRepository.findViews(ProductSpecifications.idGreaterThan(afterId == null ? 0L : afterId),
+                fields, PageRequest.of(0, limit, Sort.by("id")));
+    }
+
+    @Transactional(readOnly = true)
+    public void forEachProduct(List<String> fields, Consumer<ProductView> consumer) {
+        forEachProduct(null, null, null, null, fields, consumer);
+    }
+
+    @Transactional(readOnly = true)
+    public void forEachProduct(String name, Double minPrice, Double maxPrice, Boolean inStock,
+                               List<String> fields, Consumer<ProductView> consumer) {
+        try (Stream<ProductView> products = productRepository.streamViews(
+                ProductSpecifications.byFilters(name, minPrice, maxPrice, inStock), fields)) {
+            products.forEach(consumer);
+        }
+    }
+
+    // Loaded in a read-write transaction to stay on the primary: the cache is evicted right after a commit,
+    // and a lagging replica would put the old row back for the whole expiry time
     public Product getProductById(Long id) {
-        return productRepository.findById(id).orElseThrow(
-                () -> new ProductNotFoundException("Product with id " + id + " not found"));
+        return productCache.get(id, () -> transactionTemplate.execute(status -> productRepository.findById(id)).orElseThrow(
+                () -> new ProductNotFoundException("Product with id " + id + " not found")));
     }
 
+    // Read on the primary, where a product change and its version bump become visible together, so data read
+    // after it reflects every change it counts
+    public long getCatalogVersion() {
+        Long catalogVersion = transactionTemplate.execute(status -> changeFeedService.readCatalogVersion());
+        return catalogVersion == null ? 0 : catalogVersion;
+    }
+
+    @Transactional
     public Product addProduct(Product product) {
         Set<ConstraintViolation<Product>> violations = validator.validate(product);
         if (!violations.isEmpty()) {
             throw new ProductValidationException(violations);
         }
+        applyDefaults(product);
+        product = productRepository.save(product);
+        changeFeedService.append(ChangeEvent.PRODUCT, product.getId(), ChangeEvent.Type.CREATED, product);
+        eventPublisher.publishEvent(new ProductChangedEvent(product.getId()));
+        return product;
+    }
+
+    public ProductImportResult importProducts(Iterator<Product> products) {
+        ProductImportResult result = new ProductImportResult();
+        List<Product> batch = new ArrayList<>(importBatchSize);
+        List<Long> batchIndexes = new ArrayList<>(importBatchSize);
+        long index = 0;
+        while (true) {
+            Product product;
+            try {
+                if (!products.hasNext()) break;
+                product = products.next();
+            } catch (RuntimeException e) {
+                result.addFailure(index, "Unreadable product, import stopped: " + e.getMessage());
+                break;
+            }
+
+            Set<ConstraintViolation<Product>> violations = validator.validate(product);
+            if (violations.isEmpty()) {
+                applyDefaults(product);
+                batch.add(product);
+                batchIndexes.add(index);
+            } else {
+                result.addFailure(index, new ProductValidationException(violations).getMessage());
+            }
+            index++;
+
+            if (batch.size() == importBatchSize) {
+                saveImportBatch(batch, batchIndexes, result);
+            }
+        }
+        saveImportBatch(batch, batchIndexes, result);
+        return result;
+    }
+
+    private void saveImportBatch(List<Product> batch, List<Long> batchIndexes, ProductImportResult result) {
+        if (batch.isEmpty()) return;
+        try {
+            saveImported(batch);
+            result.setImported(result.getImported() + batch.size());
+        } catch (DataAccessException e) {
+            // The whole batch was rolled back, so its rows are inserted one by one to report the ones that fail
+            for (int i = 0; i < batch.size(); i++) {
+                Product product = batch.get(i);
+                product.setId(null);
+                product.setVersion(0);
+                try {
+                    saveImported(List.of(product));
+                    result.setImported(result.getImported() + 1);
+                } catch (DataAccessException rowError) {
+                    result.addFailure(batchIndexes.get(i), "Insert failed: " + rowError.getMostSpecificCause().getMessage());
+                }
+            }
+        }
+        batch.clear();
+        batchIndexes.clear();
+    }
+
+    private void saveImported(List<Product> products) {
+        transactionTemplate.executeWithoutResult(status -> {
+            productRepository.saveAll(products);
+            products.forEach(product -> changeFeedService.append(ChangeEvent.PRODUCT, product.getId(), ChangeEvent.Type.CREATED, product));
+            entityManager.flush();
+            entityManager.clear();
+            products.forEach(product -> eventPublisher.publishEvent(new ProductChangedEvent(product.getId())));
+        });
+    }
+
+    private static void applyDefaults(Product product) {
         product.setId(null);
+        product.setVersion(0);
         if (product.getPrice() == null) product.setPrice(0.0);
-        if (product.getInStock() == null) product.setInStock(false);
+        if (product.getQuantity() == null) product.setQuantity(0);
+        product.setInStock(product.getQuantity() > 0);
         if (product.getDescription() == null) product.setDescription("");
-        return productRepository.save(product);
     }
 
+    @Transactional
     public Product updateProduct(Product product) {
         Product existingProduct = productRepository.findById(product.getId()).orElseThrow(
                 () -> new ProductNotFoundException("Product with id " + product.getId() + " not found"));
         if (product.getName() != null) existingProduct.setName(product.getName());
         if (product.getDescription() != null) existingProduct.setDescription(product.getDescription());
         if (product.getPrice() != null) existingProduct.setPrice(product.getPrice());
-        if (product.getInStock() != null) existingProduct.setInStock(product.getInStock());
+        // Stock only changes through supply and sale documents, a product read back unchanged is still accepted
+        if (product.getQuantity() != null && !product.getQuantity().equals(existingProduct.getQuantity())) {
+            throw new ProductValidationException("Quantity of product with id " + product.getId()
+                    + " is changed by supplies and sales, not by updating the product");
+        }
         Set<ConstraintViolation<Product>> violations = validator.validate(existingProduct);
         if (!violations.isEmpty()) {
             throw new ProductValidationException(violations);
         }
-        return productRepository.save(existingProduct);
+        existingProduct = productRepository.save(existingProduct);
+        changeFeedService.append(ChangeEvent.PRODUCT, existingProduct.getId(), ChangeEvent.Type.UPDATED, existingProduct);
+        eventPublisher.publishEvent(new ProductChangedEvent(existingProduct.getId()));
+        return existingProduct;
     }
 
+    @Transactional
     public void deleteProduct(Long id) {
         if (!productRepository.existsById(id)) {
             throw new ProductNotFoundException("Product with id " + id + " not found");
         }
         productRepository.deleteById(id);
+        changeFeedService.append(ChangeEvent.PRODUCT, id, ChangeEvent.Type.DELETED, null);
+        eventPublisher.publishEvent(new ProductChangedEvent(id));
+    }
+
+    @Transactional
+    public Product adjustQuantity(Long id, int delta) {
+        return adjustQuantities(Map.of(id, delta)).get(id);
+    }
+
+    // Each delta is applied by a single conditional UPDATE, so concurrent documents for the same product
+    // never lose an update or oversell without holding a lock between reading and writing the stock.
+    // A zero delta only locks the row: the stock, version and feed of an unchanged product stay as they are
+    @Transactional
+    public Map<Long, Product> adjustQuantities(Map<Long, Integer> deltas) {
+        Set<Long> rejectedIds = new TreeSet<>();
+        Set<Long> changedIds = new TreeSet<>();
+        new TreeMap<>(deltas).forEach((id, delta) -> {
+            if (delta == 0) {
+                productRepository.findForUpdate(id);
+            } else if (productRepository.adjustQuantity(id, delta) == 0) {
+                rejectedIds.add(id);
+            } else {
+                changedIds.add(id);
+            }
+        });
+
+        Map<Long, Product> products = productRepository.findAllById(deltas.keySet()).stream()
+                .collect(Collectors.toMap(Product::getId, Function.identity()));
+        if (products.size() < deltas.size()) {
+            Set<Long> missingIds = new TreeSet<>(deltas.keySet());
+            missingIds.removeAll(products.keySet());
+            throw new ProductNotFoundException(missingIds.size() == 1
+                    ? "Product with id " + missingIds.iterator().next() + " not found"
+                    : "Products with ids " + missingIds + " not found");
+        }
+        if (!rejectedIds.isEmpty()) {
+            throw new ProductValidationException(rejectedIds.stream()
+                    .map(id -> "Not enough product with id " + id + " in stock: "
+                            + products.get(id).getQuantity() + " available, " + -deltas.get(id) + " requested")
+                    .collect(Collectors.joining(", ")));
+        }
+
+        changedIds.forEach(id -> changeFeedService.append(ChangeEvent.PRODUCT, id, ChangeEvent.Type.UPDATED, products.get(id)));
+        changedIds.forEach(id -> eventPublisher.publishEvent(new ProductChangedEvent(id)));
+        return products;
+    }
+
+    public Slice<ProductView> searchProducts(String name, Double minPrice, Double maxPrice, Boolean inStock,
+                                             Pageable pageable, List<String> fields) {
+        return searchProducts(name, minPrice, maxPrice, inStock, null, pageable, fields).getProducts();
+    }
+
+    // With a cursor the page is read from the first row after it, so its cost does not grow with the depth.
+    // Like a product by id, cached results are loaded on the primary: a lagging replica would refill the cache
+    // cleared by a write with rows from before it
+    public ProductSearchPage searchProducts(String name, Double minPrice, Double maxPrice, Boolean inStock,
+                                           ProductSearchCursor after, Pageable pageable, List<String> fields) {
+        String sortBy = pageable == null || pageable.getSort().isUnsorted()
+                ? null : pageable.getSort().iterator().next().getProperty();
+        long catalogVersion = getCatalogVersion();
+        boolean indexed = productIndex != null && productIndex.canSearch(pageable, catalogVersion);
+        // The index orders names by code points and the database by its collation, so a name cursor is continued by
+        // the side that issued it. An index cursor goes to the database only when the index has not caught up in time,
+        // at the cost of rows around the cursor that the two orders place differently
+        if (after != null && "name".equals(sortBy)) {
+            indexed = after.isIndexed() && productIndex != null && productIndex.awaitSearchable(pageable, catalogVersion);
+        }
+        Slice<ProductView> products = indexed
+                ? productIndex.search(name, minPrice, maxPrice, inStock, after, pageable, fields)
+                : searchDatabase(name, minPrice, maxPrice, inStock, after, pageable, fields, catalogVersion);
+        ProductSearchCursor next = sortBy != null && products.hasNext()
+                ? ProductSearchCursor.after(sortBy, products.getContent().get(products.getNumberOfElements() - 1),
+                        indexed && "name".equals(sortBy))
+                : null;
+        return new ProductSearchPage(products, next);
+    }
+
+    private Slice<ProductView> searchDatabase(String name, Double minPrice, Double maxPrice, Boolean inStock,
+                                              ProductSearchCursor after, Pageable pageable, List<String> fields,
+                                              long catalogVersion) {
+        ProductSearchCache.Key key = ProductSearchCache.Key.of(name, minPrice, maxPrice, inStock, after, pageable, false, fields);
+        return productSearchCache.get(key, catalogVersion, () -> transactionTemplate.execute(status -> productRepository.findViewSlice(
+                ProductSpecifications.byFilters(name, minPrice, maxPrice, inStock)
+                        .and(after == null ? null : ProductSpecifications.after(after)),
+                fields, pageable == null ? Pageable.unpaged() : pageable)));
+    }
+
+    public Slice<ProductView> searchProductsByRelevance(String name, Double minPrice, Double maxPrice, Boolean inStock,
+                                                        Pageable pageable, List<String> fields) {
+        ProductSearchCache.Key key = ProductSearchCache.Key.of(name, minPrice, maxPrice, inStock, pageable, true, fields);
+        return productSearchCache.get(key, getCatalogVersion(), () -> transactionTemplate.execute(status -> productRepository.findViewSlice(
+                ProductSpecifications.byFilters(name, minPrice, maxPrice, inStock)
+                        .and(ProductSpecifications.orderByRelevance(name)),
+                fields, pageable == null ? Pageable.unpaged() : PageRequest.of(pageable.getPageNumber(), pageable.getPageSize()))));
     }
 
-    public List<Product> searchProducts(String name, Double minPrice, Double maxPrice, Boolean inStock, Pageable pageable) {
-        if (pageable == null) {
-            return productRepository.findByFilters(name, minPrice, maxPrice, inStock);
+    public long countProducts(String name, Double minPrice, Double maxPrice, Boolean inStock) {
+        long catalogVersion = getCatalogVersion();
+        if (productIndex != null && productIndex.canSearch(null, catalogVersion)) {
+            return productIndex.count(name, minPrice, maxPrice, inStock);
         }
-        Page<Product> page = productRepository.findByFiltersAndSort(name, minPrice, maxPrice, inStock, pageable);
-        return page.getContent();
+        ProductSearchCache.Key key = ProductSearchCache.Key.of(name, minPrice, maxPrice, inStock, null, false, List.of());
+        return productSearchCache.getTotal(key, catalogVersion, () -> transactionTemplate.execute(status ->
+                productRepository.count(ProductSpecifications.byFilters(name, minPrice, maxPrice, inStock))));
     }
-}
\ No newline at end of file
+}
@@ -1,43 +1,70 @@
 package ru.interview.service;
 
+import io.micrometer.core.annotation.Timed;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import ru.interview.dto.ProductSupplyView;
+import ru.interview.entity.ChangeEvent;
 import ru.interview.entity.ProductSupply;
 import ru.interview.exception.ProductValidationException;
 import ru.interview.repository.ProductSupplyRepository;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 import ru.interview.entity.Product;
 import ru.interview.exception.ProductNotFoundException;
 
-import javax.transaction.Transactional;
 import javax.validation.ConstraintViolation;
 import javax.validation.Validator;
 
 @Service
+@Timed("app.service")
 public class ProductSupplyService {
 
     private final ProductSupplyRepository productSupplyRepository;
     private final ProductService productService;
+    private final ChangeFeedService changeFeedService;
     private final Validator validator;
 
     @Autowired
     public ProductSupplyService(
             ProductSupplyRepository productSupplyRepository,
             ProductService productService,
+            ChangeFeedService changeFeedService,
             Validator validator
     ) {
         this.productSupplyRepository = productSupplyRepository;
         this.productService = productService;
+        this.changeFeedService = changeFeedService;
         this.validator = validator;
     }
 
-    public List<ProductSupply> getAllProductSupplies() {
-        return productSupplyRepository.findAll();
+    @Transactional(readOnly = true)
+    public List<ProductSupplyView> getProductSuppliesAfter(Long afterId, int limit, boolean productIdOnly) {
+        Long after = afterId == null ? 0L : afterId;
+        return productIdOnly
+                ? productSupplyRepository.findNextPageWithProductIds(after, PageRequest.of(0, limit))
+                : productSupplyRepository.findNextPage(after, PageRequest.of(0, limit));
     }
 
+    @Transactional(readOnly = true)
+    public void forEachProductSupply(boolean productIdOnly, Consumer<ProductSupplyView> consumer) {
+        try (Stream<ProductSupplyView> productSupplies = productIdOnly
+                ? productSupplyRepository.streamAllWithProductIds()
+                : productSupplyRepository.streamAll()) {
+            productSupplies.forEach(consumer);
+        }
+    }
+
+    @Transactional(readOnly = true)
     public ProductSupply getProductSupplyById(Long id) {
         return productSupplyRepository.findById(id)
                 .orElseThrow(() -> new ProductNotFoundException("Product supply with id " + id + " not found"));
@@ -51,10 +78,42 @@ public class ProductSupplyService {
         }
         productSupply.setId(null);
 
-        Product product = productService.getProductById(productSupply.getProduct().getId());
-        product.setInStock(true);
+        Product product = productService.adjustQuantity(productSupply.getProduct().getId(), productSupply.getQuantity());
         productSupply.setProduct(product);
-        return productSupplyRepository.save(productSupply);
+        ProductSupply saved = productSupplyRepository.save(productSupply);
+        changeFeedService.append(ChangeEvent.PRODUCT_SUPPLY, saved.getId(), ChangeEvent.Type.CREATED, saved);
+        return saved;
+    }
+
+    @Transactional
+    public List<ProductSupply> addProductSupplies(List<ProductSupply> productSupplies) {
+        List<String> errors = new ArrayList<>();
+        for (int i = 0; i < productSupplies.size(); i++) {
+            ProductSupply productSupply = productSupplies.get(i);
+            for (ConstraintViolation<ProductSupply> violation : validator.validate(productSupply)) {
+                errors.add("[" + i + "]." + violation.getPropertyPath() + ": " + violation.getMessage());
+            }
+            if (productSupply.getProduct() != null && productSupply.getProduct().getId() == null) {
+                errors.add("[" + i + "].product.id: Product id is mandatory");
+            }
+        }
+        if (!errors.isEmpty()) {
+            throw new ProductValidationException(String.join(", ", errors));
+        }
+
+        Map<Long, Integer> deltas = new HashMap<>();
+        for (ProductSupply productSupply : productSupplies) {
+            deltas.merge(productSupply.getProduct().getId(), productSupply.getQuantity(), Integer::sum);
+        }
+        Map<Long, Product> products = productService.adjustQuantities(deltas);
+
+        for (ProductSupply productSupply : productSupplies) {
+            productSupply.setId(null);
+            productSupply.setProduct(products.get(productSupply.getProduct().getId()));
+        }
+        List<ProductSupply> saved = productSupplyRepository.saveAll(productSupplies);
+        saved.forEach(item -> changeFeedService.append(ChangeEvent.PRODUCT_SUPPLY, item.getId(), ChangeEvent.Type.CREATED, item));
+        return saved;
     }
 
     @Transactional
@@ -63,25 +122,33 @@ public class ProductSupplyService {
                 () -> new ProductNotFoundException("Product supply with id " + productSupply.getId() + " not found"));
 
         if (productSupply.getDocumentName() != null) existingProduct.setDocumentName(productSupply.getDocumentName());
+        Long oldProductId = existingProduct.getProduct().getId();
+        int oldQuantity = existingProduct.getQuantity();
         if (productSupply.getQuantity() != null) existingProduct.setQuantity(productSupply.getQuantity());
-        if (productSupply.getProduct().getId() != null) {
-            Product product = productService.getProductById(productSupply.getProduct().getId());
-            existingProduct.setProduct(product);
-        }
+        Long newProductId = productSupply.getProduct() != null && productSupply.getProduct().getId() != null
+                ? productSupply.getProduct().getId()
+                : oldProductId;
 
         Set<ConstraintViolation<ProductSupply>> violations = validator.validate(existingProduct);
         if (!violations.isEmpty()) {
             throw new ProductValidationException(violations);
         }
 
-        return productSupplyRepository.save(existingProduct);
+        Map<Long, Integer> deltas = new HashMap<>();
+        deltas.put(oldProductId, -oldQuantity);
+        deltas.merge(newProductId, existingProduct.getQuantity(), Integer::sum);
+        existingProduct.setProduct(productService.adjustQuantities(deltas).get(newProductId));
+
+        ProductSupply saved = productSupplyRepository.save(existingProduct);
+        changeFeedService.append(ChangeEvent.PRODUCT_SUPPLY, saved.getId(), ChangeEvent.Type.UPDATED, saved);
+        return saved;
     }
 
     @Transactional
     public void deleteProductSupply(Long id) {
-        if (!productSupplyRepository.existsById(id)) {
-            throw new ProductNotFoundException("Product supply with id " + id + " not found");
-        }
-        productSupplyRepository.deleteById(id);
+        ProductSupply productSupply = getProductSupplyById(id);
+        productService.adjustQuantity(productSupply.getProduct().getId(), -productSupply.getQuantity());
+        productSupplyRepository.delete(productSupply);
+        changeFeedService.append(ChangeEvent.PRODUCT_SUPPLY, id, ChangeEvent.Type.DELETED, null);
     }
 }
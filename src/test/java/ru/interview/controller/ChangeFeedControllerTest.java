@@ -0,0 +1,69 @@
+package ru.interview.controller;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import ru.interview.entity.ChangeEvent;
+import ru.interview.service.ChangeFeedService;
+
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@ExtendWith(SpringExtension.class)
+@WebMvcTest(ChangeFeedController.class)
+@Import(SimpleMeterRegistry.class)
+public class ChangeFeedControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockBean
+    private ChangeFeedService changeFeedService;
+
+    @Test
+    public void getChanges_FilteredPollKeepsWaitingPastChangesOfOtherEntities() throws Exception {
+        ChangeEvent event = new ChangeEvent();
+        event.setPosition(5L);
+        event.setEntity(ChangeEvent.PRODUCT);
+        when(changeFeedService.getChangesAfter(0, ChangeEvent.PRODUCT, 100)).thenReturn(List.of());
+        when(changeFeedService.getPosition()).thenReturn(3L, 5L);
+        when(changeFeedService.getChangesAfterOnPrimary(0, ChangeEvent.PRODUCT, 100)).thenReturn(List.of(), List.of(event));
+        when(changeFeedService.onChangesAfter(anyLong(), any())).thenReturn(() -> {
+        });
+
+        MvcResult result = mockMvc.perform(get("/changes").param("entity", ChangeEvent.PRODUCT).param("wait", "30"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        ArgumentCaptor<Runnable> callback = ArgumentCaptor.forClass(Runnable.class);
+        verify(changeFeedService).onChangesAfter(eq(0L), callback.capture());
+
+        callback.getValue().run();
+        verify(changeFeedService).onChangesAfter(eq(3L), callback.capture());
+
+        callback.getValue().run();
+        verify(changeFeedService, times(2)).onChangesAfter(anyLong(), any());
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.count").value(1))
+                .andExpect(jsonPath("$.cursor").value(5));
+    }
+}
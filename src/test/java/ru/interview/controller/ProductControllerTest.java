@@ -1,5 +1,7 @@
 package ru.interview.controller;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -7,32 +9,51 @@ import org.mockito.MockitoAnnotations;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import ru.interview.dto.ProductSearchCursor;
+import ru.interview.dto.ProductSearchPage;
+import ru.interview.dto.ProductView;
 import ru.interview.entity.Product;
 import ru.interview.exception.ProductNotFoundException;
 import ru.interview.exception.ProductValidationException;
 import ru.interview.service.ProductService;
 
 import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
 @ExtendWith(SpringExtension.class)
 @WebMvcTest(ProductController.class)
+@Import(SimpleMeterRegistry.class)
 public class ProductControllerTest {
 
     @Autowired
     private MockMvc mockMvc;
 
+    @Autowired
+    private MeterRegistry meterRegistry;
+
     @MockBean
     private ProductService productService;
 
@@ -42,12 +63,21 @@ public class ProductControllerTest {
     }
 
     @Test
-    public void getAllProducts_ReturnsProductList() throws Exception {
-        Product product1 = new Product();
-        Product product2 = new Product();
-        when(productService.getAllProducts()).thenReturn(Arrays.asList(product1, product2));
+    public void getAllProducts_StreamsProductList() throws Exception {
+        ProductView product1 = ProductView.builder().id(1L).build();
+        ProductView product2 = ProductView.builder().id(2L).build();
+        doAnswer(invocation -> {
+            Consumer<ProductView> consumer = invocation.getArgument(1);
+            consumer.accept(product1);
+            consumer.accept(product2);
+            return null;
+        }).when(productService).forEachProduct(eq(ProductView.FIELDS), any());
 
-        mockMvc.perform(get("/product/all"))
+        MvcResult result = mockMvc.perform(get("/product/all"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
                 .andExpect(status().isOk())
                 .andExpect(content().contentType(MediaType.APPLICATION_JSON))
                 .andExpect(jsonPath("$.status").value(HttpStatus.OK.value()))
@@ -55,6 +85,60 @@ public class ProductControllerTest {
                 .andExpect(jsonPath("$.count").value(2));
     }
 
+    @Test
+    public void getProductsPage_WhenPageIsFull_ReturnsCursor() throws Exception {
+        ProductView product1 = ProductView.builder().id(3L).build();
+        ProductView product2 = ProductView.builder().id(4L).build();
+        when(productService.getProductsAfter(2L, 2, ProductView.FIELDS)).thenReturn(Arrays.asList(product1, product2));
+
+        mockMvc.perform(get("/product/all").param("after", "2").param("limit", "2"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$.status").value(HttpStatus.OK.value()))
+                .andExpect(jsonPath("$.response.length()").value(2))
+                .andExpect(jsonPath("$.count").value(2))
+                .andExpect(jsonPath("$.cursor").value(4));
+    }
+
+    @Test
+    public void getProductsPage_WhenLastPage_ReturnsNoCursor() throws Exception {
+        ProductView product = ProductView.builder().id(3L).build();
+        when(productService.getProductsAfter(isNull(), eq(10), eq(ProductView.FIELDS))).thenReturn(List.of(product));
+
+        mockMvc.perform(get("/product/all").param("limit", "10"))
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$.status").value(HttpStatus.OK.value()))
+                .andExpect(jsonPath("$.response.length()").value(1))
+                .andExpect(jsonPath("$.cursor").doesNotExist());
+    }
+
+    @Test
+    public void getProductsPage_WithFields_AlwaysSelectsIdForCursor() throws Exception {
+        ProductView product = ProductView.builder().id(3L).name("Товар").build();
+        when(productService.getProductsAfter(isNull(), eq(1), eq(List.of("id", "name")))).thenReturn(List.of(product));
+
+        mockMvc.perform(get("/product/all").param("limit", "1").param("fields", "name"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.response[0].name").value("Товар"))
+                .andExpect(jsonPath("$.response[0].price").doesNotExist())
+                .andExpect(jsonPath("$.cursor").value(3));
+    }
+
+    @Test
+    public void getProductsPage_UnknownField_ReturnsBadRequest() throws Exception {
+        mockMvc.perform(get("/product/all").param("limit", "10").param("fields", "id,secret"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.status").value(HttpStatus.BAD_REQUEST.value()));
+    }
+
+    @Test
+    public void getProductsPage_InvalidLimit_ReturnsBadRequest() throws Exception {
+        mockMvc.perform(get("/product/all").param("limit", "100000"))
+                .andExpect(status().isBadRequest())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$.status").value(HttpStatus.BAD_REQUEST.value()));
+    }
+
     @Test
     public void getProductById_WhenProductExists_ReturnsProduct() throws Exception {
         Product product = new Product();
@@ -78,6 +162,34 @@ public class ProductControllerTest {
                 .andExpect(jsonPath("$.status").value(HttpStatus.NOT_FOUND.value()));
     }
 
+    @Test
+    public void getProductById_MatchingETag_ReturnsNotModified() throws Exception {
+        Product product = new Product();
+        product.setId(1L);
+        product.setVersion(3L);
+        when(productService.getProductById(anyLong())).thenReturn(product);
+
+        mockMvc.perform(get("/product/{id}", 1L))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"3\""))
+                .andExpect(header().string("Cache-Control", "max-age=0, must-revalidate, public"));
+
+        mockMvc.perform(get("/product/{id}", 1L).header("If-None-Match", "\"3\""))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+    }
+
+    @Test
+    public void searchProducts_MatchingETag_ReturnsNotModifiedWithoutQuery() throws Exception {
+        when(productService.getCatalogVersion()).thenReturn(7L);
+
+        mockMvc.perform(get("/product/search").param("name", "tea").header("If-None-Match", "\"7\""))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string("ETag", "\"7\""));
+
+        verify(productService, never()).searchProducts(any(), any(), any(), any(), any(), any(), any());
+    }
+
     @Test
     public void addProduct_ValidProduct_ReturnsCreated() throws Exception {
         Product product = new Product();
@@ -108,6 +220,53 @@ public class ProductControllerTest {
                 .andExpect(jsonPath("$.status").value(HttpStatus.BAD_REQUEST.value()));
     }
 
+    @Test
+    public void addProduct_RetriedWithIdempotencyKey_ReplaysTheFirstResponse() throws Exception {
+        Product product = new Product();
+        product.setId(1L);
+        product.setName("Test Product");
+        when(productService.addProduct(any(Product.class))).thenReturn(product);
+        String body = "{\"name\":\"Test Product\"}";
+
+        MvcResult first = mockMvc.perform(post("/product/add").header("Idempotency-Key", "add-replay")
+                        .contentType(MediaType.APPLICATION_JSON).content(body))
+                .andExpect(status().isCreated())
+                .andExpect(header().doesNotExist("Idempotent-Replayed"))
+                .andReturn();
+        mockMvc.perform(post("/product/add").header("Idempotency-Key", "add-replay")
+                        .contentType(MediaType.APPLICATION_JSON).content(body))
+                .andExpect(status().isCreated())
+                .andExpect(header().string("Idempotent-Replayed", "true"))
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(content().string(first.getResponse().getContentAsString()));
+        mockMvc.perform(post("/product/add").header("Idempotency-Key", "add-replay")
+                        .contentType(MediaType.APPLICATION_JSON).content("{\"name\":\"Other Product\"}"))
+                .andExpect(status().isUnprocessableEntity())
+                .andExpect(jsonPath("$.error").value("Idempotency-Key 'add-replay' was already used with a different request body."));
+
+        verify(productService, times(1)).addProduct(any(Product.class));
+    }
+
+    @Test
+    public void addProduct_FailedWithIdempotencyKey_RunsTheRetry() throws Exception {
+        Product product = new Product();
+        product.setId(1L);
+        product.setName("Test Product");
+        when(productService.addProduct(any(Product.class)))
+                .thenThrow(new ProductValidationException("Validation failed"))
+                .thenReturn(product);
+
+        mockMvc.perform(post("/product/add").header("Idempotency-Key", "add-retry")
+                        .contentType(MediaType.APPLICATION_JSON).content("{\"name\":\"Test Product\"}"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(post("/product/add").header("Idempotency-Key", "add-retry")
+                        .contentType(MediaType.APPLICATION_JSON).content("{\"name\":\"Test Product\"}"))
+                .andExpect(status().isCreated())
+                .andExpect(header().doesNotExist("Idempotent-Replayed"));
+
+        verify(productService, times(2)).addProduct(any(Product.class));
+    }
+
     @Test
     public void updateProduct_ValidProduct_ReturnsOk() throws Exception {
         Product product = new Product();
@@ -137,6 +296,8 @@ public class ProductControllerTest {
                 .andExpect(status().isBadRequest())
                 .andExpect(content().contentType(MediaType.APPLICATION_JSON))
                 .andExpect(jsonPath("$.status").value(HttpStatus.BAD_REQUEST.value()));
+
+        assertEquals(1.0, meterRegistry.counter("app.validation.failures", "uri", "/product/update").count());
     }
 
     @Test
@@ -177,18 +338,11 @@ public class ProductControllerTest {
 
     @Test
     public void searchProducts_ReturnsProductList() throws Exception {
-        Product product1 = new Product();
-        product1.setName("Товар1");
-        product1.setPrice(100.0);
-        product1.setInStock(true);
-
-        Product product2 = new Product();
-        product2.setName("Товар2");
-        product2.setPrice(200.0);
-        product2.setInStock(true);
+        ProductView product1 = ProductView.builder().name("Товар1").price(100.0).inStock(true).build();
+        ProductView product2 = ProductView.builder().name("Товар2").price(200.0).inStock(true).build();
 
-        when(productService.searchProducts(anyString(), anyDouble(), anyDouble(), anyBoolean(), any()))
-                .thenReturn(Arrays.asList(product1, product2));
+        when(productService.searchProducts(anyString(), anyDouble(), anyDouble(), anyBoolean(), isNull(), any(), eq(ProductView.FIELDS)))
+                .thenReturn(new ProductSearchPage(new SliceImpl<>(Arrays.asList(product1, product2)), null));
 
         mockMvc.perform(get("/product/search")
                         .param("name", "Товар")
@@ -201,4 +355,84 @@ public class ProductControllerTest {
                 .andExpect(jsonPath("$.response.length()").value(2))
                 .andExpect(jsonPath("$.count").value(2));
     }
+
+    @Test
+    public void searchProducts_Paged_ReturnsHasNextAndRequestedTotal() throws Exception {
+        ProductView product = ProductView.builder().id(7L).name("Товар1").build();
+        when(productService.searchProducts(eq("Товар"), isNull(), isNull(), isNull(), isNull(), any(), eq(ProductView.FIELDS)))
+                .thenReturn(new ProductSearchPage(new SliceImpl<>(List.of(product), PageRequest.of(0, 1), true),
+                        new ProductSearchCursor("name", "Товар1", 7L)));
+        when(productService.countProducts(eq("Товар"), isNull(), isNull(), isNull())).thenReturn(5L);
+
+        mockMvc.perform(get("/product/search").param("name", "Товар").param("size", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.hasNext").value(true))
+                .andExpect(jsonPath("$.cursor").value(new ProductSearchCursor("name", "Товар1", 7L).encode()))
+                .andExpect(jsonPath("$.total").doesNotExist());
+        verify(productService, never()).countProducts(any(), any(), any(), any());
+
+        mockMvc.perform(get("/product/search").param("name", "Товар").param("size", "1").param("withTotal", "true"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.count").value(1))
+                .andExpect(jsonPath("$.total").value(5));
+    }
+
+    @Test
+    public void searchProducts_WithCursor_SeeksFromFirstPage() throws Exception {
+        ProductSearchCursor cursor = new ProductSearchCursor("price", 150.0, 7L);
+        when(productService.searchProducts(isNull(), isNull(), isNull(), isNull(), eq(cursor),
+                eq(PageRequest.of(0, 2, Sort.by("price", "id"))), eq(List.of("id", "price"))))
+                .thenReturn(new ProductSearchPage(new SliceImpl<>(List.of(ProductView.builder().id(3L).price(200.0).build())), null));
+
+        mockMvc.perform(get("/product/search")
+                        .param("sortBy", "price")
+                        .param("size", "2")
+                        .param("page", "5")
+                        .param("fields", "price")
+                        .param("cursor", cursor.encode()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.response[0].id").value(3))
+                .andExpect(jsonPath("$.hasNext").value(false))
+                .andExpect(jsonPath("$.cursor").doesNotExist());
+    }
+
+    @Test
+    public void searchProducts_CursorForOtherSort_ReturnsBadRequest() throws Exception {
+        mockMvc.perform(get("/product/search")
+                        .param("sortBy", "name")
+                        .param("size", "2")
+                        .param("cursor", new ProductSearchCursor("price", 150.0, 7L).encode()))
+                .andExpect(status().isBadRequest());
+
+        mockMvc.perform(get("/product/search")
+                        .param("sortBy", "price")
+                        .param("size", "2")
+                        .param("cursor", "not a cursor"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void searchProducts_SortByRelevance_ReturnsProductList() throws Exception {
+        ProductView product = ProductView.builder().name("Товар1").build();
+
+        when(productService.searchProductsByRelevance(eq("Товар"), isNull(), isNull(), isNull(), any(), eq(ProductView.FIELDS)))
+                .thenReturn(new SliceImpl<>(List.of(product)));
+
+        mockMvc.perform(get("/product/search")
+                        .param("name", "Товар")
+                        .param("sortBy", "relevance"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$.response.length()").value(1))
+                .andExpect(jsonPath("$.count").value(1));
+    }
+
+    @Test
+    public void searchProducts_SortByRelevanceWithoutName_ReturnsBadRequest() throws Exception {
+        mockMvc.perform(get("/product/search")
+                        .param("sortBy", "relevance"))
+                .andExpect(status().isBadRequest())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$.status").value(HttpStatus.BAD_REQUEST.value()));
+    }
 }
\ No newline at end of file
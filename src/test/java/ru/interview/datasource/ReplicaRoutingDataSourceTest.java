@@ -0,0 +1,99 @@
+package ru.interview.datasource;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ReplicaRoutingDataSourceTest {
+
+    private final DataSource primary = mock(DataSource.class);
+    private final DataSource replica1 = mock(DataSource.class);
+    private final DataSource replica2 = mock(DataSource.class);
+    private final Connection primaryConnection = mock(Connection.class);
+    private final Connection replica1Connection = mock(Connection.class);
+    private final Connection replica2Connection = mock(Connection.class);
+
+    private ReplicaRoutingDataSource dataSource;
+
+    @BeforeEach
+    public void setUp() throws SQLException {
+        when(primary.getConnection()).thenReturn(primaryConnection);
+        when(replica1.getConnection()).thenReturn(replica1Connection);
+        when(replica2.getConnection()).thenReturn(replica2Connection);
+        when(replica1Connection.isValid(1)).thenReturn(true);
+        when(replica2Connection.isValid(1)).thenReturn(true);
+
+        Map<String, DataSource> replicas = new LinkedHashMap<>();
+        replicas.put("replica-1", replica1);
+        replicas.put("replica-2", replica2);
+        dataSource = new ReplicaRoutingDataSource(primary, replicas, Duration.ofSeconds(5), Duration.ofSeconds(1));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+    }
+
+    @Test
+    public void testWritesGoToPrimary() throws SQLException {
+        assertSame(primaryConnection, dataSource.getConnection());
+        assertSame(primaryConnection, dataSource.getConnection());
+    }
+
+    @Test
+    public void testReadOnlyTransactionsAlternateReplicas() throws SQLException {
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+
+        assertSame(replica1Connection, dataSource.getConnection());
+        assertSame(replica2Connection, dataSource.getConnection());
+        assertSame(replica1Connection, dataSource.getConnection());
+    }
+
+    @Test
+    public void testFailedReplicaFallsBackAndIsSkipped() throws SQLException {
+        when(replica1.getConnection()).thenThrow(new SQLException("Connection refused"));
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+
+        assertSame(primaryConnection, dataSource.getConnection());
+        assertEquals(Set.of("replica-2"), dataSource.getHealthyReplicas());
+        assertSame(replica2Connection, dataSource.getConnection());
+        assertSame(replica2Connection, dataSource.getConnection());
+    }
+
+    @Test
+    public void testAllReplicasDownFallsBackToPrimary() throws SQLException {
+        when(replica1Connection.isValid(1)).thenReturn(false);
+        when(replica2.getConnection()).thenThrow(new SQLException("Connection refused"));
+        dataSource.checkReplicas();
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+
+        assertEquals(Set.of(), dataSource.getHealthyReplicas());
+        assertSame(primaryConnection, dataSource.getConnection());
+    }
+
+    @Test
+    public void testHealthCheckBringsReplicaBack() throws SQLException {
+        when(replica1.getConnection())
+                .thenThrow(new SQLException("Connection refused"))
+                .thenReturn(replica1Connection);
+        dataSource.checkReplicas();
+        assertEquals(Set.of("replica-2"), dataSource.getHealthyReplicas());
+
+        dataSource.checkReplicas();
+        assertEquals(Set.of("replica-1", "replica-2"), dataSource.getHealthyReplicas());
+    }
+}
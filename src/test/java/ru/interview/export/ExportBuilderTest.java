@@ -0,0 +1,87 @@
+package ru.interview.export;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.interview.dto.ProductView;
+import ru.interview.exception.ProductValidationException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ExportBuilderTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final List<ProductView> products = List.of(
+            ProductView.builder().id(1L).name("Чай, чёрный").price(10.0).build(),
+            ProductView.builder().id(2L).name("Кофе \"Арабика\"").build());
+
+    @Test
+    public void export_Csv_WritesHeaderAndQuotesValues() throws IOException {
+        ResponseEntity<StreamingResponseBody> response = export(ExportFormat.CSV, null);
+
+        assertEquals("id,name,price\r\n1,\"Чай, чёрный\",10.0\r\n2,\"Кофе \"\"Арабика\"\"\",\r\n", body(response));
+        assertEquals("text/csv;charset=UTF-8", response.getHeaders().getContentType().toString());
+        assertEquals("attachment; filename=\"products.csv\"", response.getHeaders().getFirst(HttpHeaders.CONTENT_DISPOSITION));
+        assertNull(response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+    }
+
+    @Test
+    public void export_Ndjson_WritesOneObjectPerLine() throws IOException {
+        ResponseEntity<StreamingResponseBody> response = export(ExportFormat.NDJSON, null);
+
+        String[] lines = body(response).split("\n");
+        assertEquals(2, lines.length);
+        assertEquals(1L, objectMapper.readTree(lines[0]).get("id").asLong());
+        assertFalse(lines[1].contains("price"));
+    }
+
+    @Test
+    public void export_AcceptsGzip_CompressesBody() throws IOException {
+        ResponseEntity<StreamingResponseBody> response = export(ExportFormat.CSV, "gzip, deflate");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        response.getBody().writeTo(out);
+        String body = new String(new GZIPInputStream(new ByteArrayInputStream(out.toByteArray())).readAllBytes(),
+                StandardCharsets.UTF_8);
+
+        assertEquals("gzip", response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+        assertTrue(body.startsWith("id,name,price\r\n1,"));
+    }
+
+    @Test
+    public void acceptsGzip_HonoursQualityValues() {
+        assertTrue(ExportBuilder.acceptsGzip("deflate, GZIP;q=0.5"));
+        assertTrue(ExportBuilder.acceptsGzip("br, *"));
+        assertFalse(ExportBuilder.acceptsGzip("gzip;q=0, identity"));
+        assertFalse(ExportBuilder.acceptsGzip("*;q=0.8, gzip; q=0"));
+        assertFalse(ExportBuilder.acceptsGzip("deflate, br"));
+        assertFalse(ExportBuilder.acceptsGzip(null));
+    }
+
+    @Test
+    public void exportFormat_Unknown_ThrowsProductValidationException() {
+        assertEquals(ExportFormat.NDJSON, ExportFormat.of("NDJSON"));
+        assertThrows(ProductValidationException.class, () -> ExportFormat.of("xml"));
+    }
+
+    private ResponseEntity<StreamingResponseBody> export(ExportFormat format, String acceptEncoding) {
+        return ExportBuilder.<ProductView>export(format, "products", acceptEncoding,
+                ExportColumns.products(List.of("id", "name", "price")), objectMapper, products::forEach);
+    }
+
+    private static String body(ResponseEntity<StreamingResponseBody> response) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        response.getBody().writeTo(out);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+}
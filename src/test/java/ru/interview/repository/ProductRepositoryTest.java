@@ -5,14 +5,26 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import ru.interview.config.SchemaInitializer;
+import ru.interview.dto.ProductSearchCursor;
+import ru.interview.dto.ProductView;
 import ru.interview.entity.Product;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @DataJpaTest
+@Import(SchemaInitializer.class)
 public class ProductRepositoryTest {
 
     @Autowired
@@ -125,7 +137,7 @@ public class ProductRepositoryTest {
     }
 
     @Test
-    public void findByFiltersAndSort_ReturnsProductPage() {
+    public void findAllByFilters_ReturnsProductPage() {
         Product product1 = new Product();
         product1.setName("Товар1");
         product1.setPrice(100.0);
@@ -138,8 +150,8 @@ public class ProductRepositoryTest {
         product2.setInStock(true);
         productRepository.save(product2);
 
-        Page<Product> page = productRepository.findByFiltersAndSort(
-                "Товар", 50.0, 250.0, true, PageRequest.of(0, 10));
+        Page<Product> page = productRepository.findAll(
+                ProductSpecifications.byFilters("Товар", 50.0, 250.0, true), PageRequest.of(0, 10));
 
         Assertions.assertEquals(2, page.getTotalElements());
         Assertions.assertTrue(page.getContent().contains(product1));
@@ -147,7 +159,7 @@ public class ProductRepositoryTest {
     }
 
     @Test
-    public void findByFilters_ReturnsProductList() {
+    public void findAllByFilters_ReturnsProductList() {
         Product product1 = new Product();
         product1.setName("Товар1");
         product1.setPrice(100.0);
@@ -160,11 +172,172 @@ public class ProductRepositoryTest {
         product2.setInStock(true);
         productRepository.save(product2);
 
-        List<Product> products = productRepository.findByFilters("Товар", 50.0, 250.0, true);
+        List<Product> products = productRepository.findAll(ProductSpecifications.byFilters("Товар", 50.0, 250.0, true));
 
         Assertions.assertEquals(2, products.size());
         Assertions.assertTrue(products.contains(product1));
         Assertions.assertTrue(products.contains(product2));
     }
 
+    @Test
+    public void findViews_AfterId_ReturnsProductsInIdOrder() {
+        Product product1 = new Product();
+        product1.setName("Product 1");
+        product1 = productRepository.save(product1);
+
+        Product product2 = new Product();
+        product2.setName("Product 2");
+        product2 = productRepository.save(product2);
+
+        Product product3 = new Product();
+        product3.setName("Product 3");
+        product3 = productRepository.save(product3);
+
+        List<ProductView> products = productRepository.findViews(ProductSpecifications.idGreaterThan(product1.getId()),
+                List.of("id"), PageRequest.of(0, 1, Sort.by("id")));
+        Assertions.assertEquals(List.of(ProductView.builder().id(product2.getId()).build()), products);
+
+        products = productRepository.findViews(ProductSpecifications.idGreaterThan(product2.getId()),
+                List.of("id"), PageRequest.of(0, 10, Sort.by("id")));
+        Assertions.assertEquals(List.of(ProductView.builder().id(product3.getId()).build()), products);
+    }
+
+    @Test
+    public void findViewSlice_ReadsOneRowAheadForHasNext() {
+        for (int i = 1; i <= 3; i++) {
+            Product product = new Product();
+            product.setName("Product " + i);
+            productRepository.save(product);
+        }
+
+        Slice<ProductView> first = productRepository.findViewSlice(null, List.of("name"), PageRequest.of(0, 2, Sort.by("name")));
+        Slice<ProductView> last = productRepository.findViewSlice(null, List.of("name"), PageRequest.of(1, 2, Sort.by("name")));
+
+        Assertions.assertEquals(2, first.getNumberOfElements());
+        Assertions.assertTrue(first.hasNext());
+        Assertions.assertEquals(List.of(ProductView.builder().name("Product 3").build()), last.getContent());
+        Assertions.assertFalse(last.hasNext());
+    }
+
+    @Test
+    public void findViewSlice_AfterCursor_WalksTiesAndNullsInOrder() {
+        Double[] prices = {20.0, 10.0, null, 10.0, 30.0};
+        for (int i = 0; i < prices.length; i++) {
+            Product product = new Product();
+            product.setName("Product " + i);
+            product.setPrice(prices[i]);
+            productRepository.save(product);
+        }
+
+        List<Double> seen = new ArrayList<>();
+        ProductSearchCursor cursor = null;
+        Slice<ProductView> slice;
+        do {
+            slice = productRepository.findViewSlice(cursor == null ? null : ProductSpecifications.after(cursor),
+                    List.of("id", "price"), PageRequest.of(0, 2, Sort.by("price", "id")));
+            slice.forEach(product -> seen.add(product.getPrice()));
+            cursor = slice.hasNext() ? ProductSearchCursor.after("price", slice.getContent().get(1), false) : null;
+        } while (cursor != null);
+
+        Assertions.assertEquals(Arrays.asList(10.0, 10.0, 20.0, 30.0, null), seen);
+    }
+
+    @Test
+    public void findViews_SelectsOnlyRequestedFields() {
+        Product product = new Product();
+        product.setName("Product");
+        product.setDescription("Description");
+        product.setPrice(10.0);
+        product.setQuantity(3);
+        product.setInStock(true);
+        productRepository.save(product);
+
+        List<ProductView> products = productRepository.findViews(null, List.of("name", "price"), Pageable.unpaged());
+
+        Assertions.assertEquals(List.of(ProductView.builder().name("Product").price(10.0).build()), products);
+    }
+
+    @Test
+    public void streamViews_ReturnsAllProductsInIdOrder() {
+        Product product1 = new Product();
+        product1.setName("Product 1");
+        productRepository.save(product1);
+
+        Product product2 = new Product();
+        product2.setName("Product 2");
+        productRepository.save(product2);
+
+        try (Stream<ProductView> products = productRepository.streamViews(null, List.of("id", "name"))) {
+            Assertions.assertEquals(List.of("Product 1", "Product 2"),
+                    products.map(ProductView::getName).collect(Collectors.toList()));
+        }
+    }
+
+    @Test
+    public void findViewsOrderByRelevance_ReturnsClosestNamesFirst() {
+        Product product1 = new Product();
+        product1.setName("Чайник электрический");
+        productRepository.save(product1);
+
+        Product product2 = new Product();
+        product2.setName("Чайник");
+        productRepository.save(product2);
+
+        List<ProductView> products = productRepository.findViews(ProductSpecifications.nameContains("чайник")
+                .and(ProductSpecifications.orderByRelevance("чайник")), List.of("name"), PageRequest.of(0, 10));
+        Assertions.assertEquals(List.of("Чайник", "Чайник электрический"),
+                products.stream().map(ProductView::getName).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void findAllOrderByRelevance_ReturnsClosestNamesFirst() {
+        Product product1 = new Product();
+        product1.setName("Чайник электрический");
+        product1.setPrice(100.0);
+        product1.setInStock(true);
+        productRepository.save(product1);
+
+        Product product2 = new Product();
+        product2.setName("Чайник");
+        product2.setPrice(200.0);
+        product2.setInStock(true);
+        productRepository.save(product2);
+
+        Product product3 = new Product();
+        product3.setName("Утюг");
+        product3.setPrice(300.0);
+        product3.setInStock(true);
+        productRepository.save(product3);
+
+        List<Product> products = productRepository.findAll(ProductSpecifications.byFilters("чайник", null, null, true)
+                .and(ProductSpecifications.orderByRelevance("чайник")));
+        Assertions.assertEquals(List.of(product2, product1), products);
+
+        Page<Product> page = productRepository.findAll(ProductSpecifications.byFilters("чайник", null, null, null)
+                .and(ProductSpecifications.orderByRelevance("чайник")), PageRequest.of(0, 1));
+        Assertions.assertEquals(List.of(product2), page.getContent());
+        Assertions.assertEquals(2, page.getTotalElements());
+    }
+
+    @Test
+    public void findAllByFilters_AppliesOnlySuppliedFilters() {
+        Product product1 = new Product();
+        product1.setName("Товар1");
+        product1.setPrice(100.0);
+        product1.setInStock(true);
+        productRepository.save(product1);
+
+        Product product2 = new Product();
+        product2.setName("Другое");
+        product2.setPrice(200.0);
+        product2.setInStock(false);
+        productRepository.save(product2);
+
+        Assertions.assertEquals(2, productRepository.findAll(ProductSpecifications.byFilters(null, null, null, null)).size());
+        Assertions.assertEquals(List.of(product2), productRepository.findAll(ProductSpecifications.byFilters(null, 150.0, null, null)));
+        Assertions.assertEquals(List.of(product1), productRepository.findAll(ProductSpecifications.byFilters(null, null, 150.0, null)));
+        Assertions.assertEquals(List.of(product2), productRepository.findAll(ProductSpecifications.byFilters(null, null, null, false)));
+        Assertions.assertEquals(List.of(product1), productRepository.findAll(ProductSpecifications.byFilters("товар", null, null, null)));
+    }
+
 }
\ No newline at end of file
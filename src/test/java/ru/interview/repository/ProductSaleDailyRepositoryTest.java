@@ -0,0 +1,169 @@
+package ru.interview.repository;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.PageRequest;
+import ru.interview.dto.ProductSalesDay;
+import ru.interview.dto.ProductSalesTotal;
+import ru.interview.entity.Product;
+import ru.interview.entity.ProductSale;
+import ru.interview.entity.ProductSaleDaily;
+import ru.interview.entity.ProductSaleUndated;
+import ru.interview.exception.ProductValidationException;
+import ru.interview.service.ProductSaleAnalyticsService;
+
+import javax.persistence.EntityManager;
+import java.time.LocalDate;
+import java.util.List;
+
+@DataJpaTest
+public class ProductSaleDailyRepositoryTest {
+
+    private static final LocalDate DAY1 = LocalDate.of(2024, 3, 1);
+    private static final LocalDate DAY2 = LocalDate.of(2024, 3, 2);
+
+    @Autowired
+    private ProductSaleDailyRepository productSaleDailyRepository;
+
+    @Autowired
+    private ProductSaleUndatedRepository productSaleUndatedRepository;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    private ProductSaleAnalyticsService productSaleAnalyticsService;
+
+    private Product product1;
+    private Product product2;
+
+    @BeforeEach
+    public void setUp() {
+        productSaleDailyRepository.deleteAll();
+        productSaleUndatedRepository.deleteAll();
+        productRepository.deleteAll();
+        productSaleAnalyticsService = new ProductSaleAnalyticsService(productSaleDailyRepository, productSaleUndatedRepository);
+        product1 = product("Product 1");
+        product2 = product("Product 2");
+    }
+
+    @Test
+    public void recordSales_SumsSalesOfSameProductAndDay() {
+        productSaleAnalyticsService.recordSales(List.of(
+                sale(product1, DAY1, 2, 10.0),
+                sale(product1, DAY1, 3, 20.0),
+                sale(product1, DAY2, 1, 10.0)));
+        productSaleAnalyticsService.recordSales(List.of(sale(product1, DAY1, 1, 5.0)));
+        entityManager.clear();
+
+        ProductSaleDaily day1 = productSaleDailyRepository.findById(new ProductSaleDaily.Key(product1.getId(), DAY1)).orElseThrow();
+        Assertions.assertEquals(6L, day1.getUnits());
+        Assertions.assertEquals(85.0, day1.getRevenue());
+        Assertions.assertEquals(2, productSaleDailyRepository.count());
+    }
+
+    @Test
+    public void recordChange_NegativeQuantityTakesSaleOut() {
+        productSaleAnalyticsService.recordSales(List.of(sale(product1, DAY1, 5, 10.0)));
+
+        productSaleAnalyticsService.recordChange(product1.getId(), DAY1.atTime(12, 0), -2, 10.0);
+        entityManager.clear();
+
+        ProductSaleDaily day1 = productSaleDailyRepository.findById(new ProductSaleDaily.Key(product1.getId(), DAY1)).orElseThrow();
+        Assertions.assertEquals(3L, day1.getUnits());
+        Assertions.assertEquals(30.0, day1.getRevenue());
+    }
+
+    @Test
+    public void findTotals_SumsDaysWithinPeriod() {
+        productSaleAnalyticsService.recordSales(List.of(
+                sale(product1, DAY1, 2, 10.0),
+                sale(product1, DAY2, 3, 10.0),
+                sale(product2, DAY2, 1, 100.0)));
+
+        List<ProductSalesTotal> totals = productSaleDailyRepository.findTotals(DAY1, DAY2, PageRequest.of(0, 10));
+        List<ProductSalesTotal> firstDay = productSaleDailyRepository.findTotals(DAY1, DAY1, PageRequest.of(0, 10));
+
+        Assertions.assertEquals(2, totals.size());
+        Assertions.assertEquals("Product 1", totals.get(0).getProduct().getName());
+        Assertions.assertEquals(5L, totals.get(0).getUnits());
+        Assertions.assertEquals(50.0, totals.get(0).getRevenue());
+        Assertions.assertEquals(1, firstDay.size());
+        Assertions.assertEquals(2L, firstDay.get(0).getUnits());
+    }
+
+    @Test
+    public void getTopSellers_RanksByRevenueOrUnits() {
+        productSaleAnalyticsService.recordSales(List.of(
+                sale(product1, DAY1, 5, 10.0),
+                sale(product2, DAY1, 1, 100.0)));
+
+        List<ProductSalesTotal> byRevenue = productSaleAnalyticsService.getTopSellers(DAY1, DAY2, 1, "revenue");
+        List<ProductSalesTotal> byUnits = productSaleAnalyticsService.getTopSellers(DAY1, DAY2, 1, "units");
+
+        Assertions.assertEquals(1, byRevenue.size());
+        Assertions.assertEquals(product2.getId(), byRevenue.get(0).getProduct().getId());
+        Assertions.assertEquals(product1.getId(), byUnits.get(0).getProduct().getId());
+        Assertions.assertThrows(ProductValidationException.class,
+                () -> productSaleAnalyticsService.getTopSellers(DAY1, DAY2, 1, "price"));
+    }
+
+    @Test
+    public void recordChange_UndatedSalesCountInTotalsButNotInDays() {
+        productSaleAnalyticsService.recordSales(List.of(sale(product1, DAY1, 1, 10.0)));
+        productSaleUndatedRepository.save(new ProductSaleUndated(product2.getId(), 5L, 50.0));
+
+        productSaleAnalyticsService.recordChange(product2.getId(), null, -2, 10.0);
+        entityManager.clear();
+
+        List<ProductSalesTotal> totals = productSaleAnalyticsService.getTotals(DAY1, DAY2, 0, 10);
+        List<ProductSalesTotal> byUnits = productSaleAnalyticsService.getTopSellers(DAY1, DAY2, 1, "units");
+        List<ProductSalesDay> days = productSaleAnalyticsService.getDailySales(null, DAY1, DAY2);
+
+        Assertions.assertEquals(2, totals.size());
+        Assertions.assertEquals(1L, totals.get(0).getUnits());
+        Assertions.assertEquals(3L, totals.get(1).getUnits());
+        Assertions.assertEquals(30.0, totals.get(1).getRevenue());
+        Assertions.assertEquals(product2.getId(), byUnits.get(0).getProduct().getId());
+        Assertions.assertEquals(List.of(new ProductSalesDay(DAY1, 1L, 10.0)), days);
+    }
+
+    @Test
+    public void getDailySales_ReturnsSeriesForAllOrOneProduct() {
+        productSaleAnalyticsService.recordSales(List.of(
+                sale(product1, DAY1, 2, 10.0),
+                sale(product2, DAY1, 1, 10.0),
+                sale(product2, DAY2, 4, 10.0)));
+
+        List<ProductSalesDay> all = productSaleAnalyticsService.getDailySales(null, DAY1, DAY2);
+        List<ProductSalesDay> product1Days = productSaleAnalyticsService.getDailySales(product1.getId(), DAY1, DAY2);
+
+        Assertions.assertEquals(List.of(new ProductSalesDay(DAY1, 3L, 30.0), new ProductSalesDay(DAY2, 4L, 40.0)), all);
+        Assertions.assertEquals(List.of(new ProductSalesDay(DAY1, 2L, 20.0)), product1Days);
+        Assertions.assertThrows(ProductValidationException.class,
+                () -> productSaleAnalyticsService.getDailySales(null, DAY2, DAY1));
+    }
+
+    private Product product(String name) {
+        Product product = new Product();
+        product.setName(name);
+        product.setPrice(10.0);
+        product.setQuantity(100);
+        product.setInStock(true);
+        return productRepository.save(product);
+    }
+
+    private static ProductSale sale(Product product, LocalDate day, int quantity, double purchasePrice) {
+        ProductSale sale = new ProductSale();
+        sale.setProduct(product);
+        sale.setQuantity(quantity);
+        sale.setPurchasePrice(purchasePrice);
+        sale.setSoldAt(day.atTime(12, 0));
+        return sale;
+    }
+}
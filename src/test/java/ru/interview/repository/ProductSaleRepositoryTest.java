@@ -0,0 +1,122 @@
+package ru.interview.repository;
+
+import org.hibernate.Hibernate;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.PageRequest;
+import ru.interview.dto.ProductSaleView;
+import ru.interview.entity.Product;
+import ru.interview.entity.ProductSale;
+import ru.interview.metrics.StatementCounter;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+@DataJpaTest
+public class ProductSaleRepositoryTest {
+
+    @Autowired
+    private ProductSaleRepository productSaleRepository;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @BeforeEach
+    public void setUp() {
+        productSaleRepository.deleteAll();
+        productRepository.deleteAll();
+    }
+
+    @Test
+    public void findNextPage_StatementCountDoesNotGrowWithRows() {
+        Assertions.assertEquals(1, statementsToReadPage(5));
+        Assertions.assertEquals(1, statementsToReadPage(50));
+    }
+
+    @Test
+    public void findNextPage_ReturnsProductSummary() {
+        saveSales(2);
+
+        List<ProductSaleView> sales = productSaleRepository.findNextPage(0L, PageRequest.of(0, 10));
+
+        Assertions.assertEquals(2, sales.size());
+        Assertions.assertEquals("Product 0", sales.get(0).getProduct().getName());
+        Assertions.assertEquals(10.0, sales.get(0).getProduct().getPrice());
+    }
+
+    @Test
+    public void findNextPageWithProductIds_ReturnsOnlyProductId() {
+        List<ProductSale> saved = saveSales(2);
+
+        List<ProductSaleView> sales = productSaleRepository.findNextPageWithProductIds(0L, PageRequest.of(0, 10));
+
+        Assertions.assertEquals(saved.get(1).getProduct().getId(), sales.get(1).getProduct().getId());
+        Assertions.assertNull(sales.get(1).getProduct().getName());
+    }
+
+    @Test
+    public void streamAll_StatementCountDoesNotGrowWithRows() {
+        saveSales(30);
+        entityManager.clear();
+
+        StatementCounter.reset();
+        try (Stream<ProductSaleView> sales = productSaleRepository.streamAll()) {
+            Assertions.assertEquals(30, sales.map(sale -> sale.getProduct().getName()).collect(Collectors.toList()).size());
+        }
+        Assertions.assertEquals(1, StatementCounter.count());
+    }
+
+    @Test
+    public void findById_FetchesProductInSameQuery() {
+        ProductSale saved = saveSales(1).get(0);
+        entityManager.clear();
+
+        StatementCounter.reset();
+        ProductSale sale = productSaleRepository.findById(saved.getId()).orElseThrow();
+
+        Assertions.assertTrue(Hibernate.isInitialized(sale.getProduct()));
+        Assertions.assertEquals(1, StatementCounter.count());
+    }
+
+    private int statementsToReadPage(int rows) {
+        productSaleRepository.deleteAll();
+        saveSales(rows);
+        entityManager.clear();
+
+        StatementCounter.reset();
+        List<ProductSaleView> sales = productSaleRepository.findNextPage(0L, PageRequest.of(0, rows));
+        sales.forEach(sale -> Assertions.assertNotNull(sale.getProduct().getName()));
+        Assertions.assertEquals(rows, sales.size());
+        return StatementCounter.count();
+    }
+
+    private List<ProductSale> saveSales(int count) {
+        List<ProductSale> sales = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Product product = new Product();
+            product.setName("Product " + i);
+            product.setPrice(10.0 + i);
+            product.setQuantity(10);
+            product.setInStock(true);
+            productRepository.save(product);
+
+            ProductSale sale = new ProductSale();
+            sale.setDocumentName("Sale " + i);
+            sale.setProduct(product);
+            sale.setQuantity(1);
+            sale.setPurchasePrice(20.0);
+            sales.add(productSaleRepository.save(sale));
+        }
+        productSaleRepository.flush();
+        return sales;
+    }
+}
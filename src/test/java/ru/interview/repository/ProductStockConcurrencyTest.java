@@ -0,0 +1,115 @@
+package ru.interview.repository;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.interview.entity.Product;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class ProductStockConcurrencyTest {
+
+    private static final int THREADS = 16;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private TransactionTemplate transactionTemplate;
+
+    @BeforeEach
+    public void setUp() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        productRepository.deleteAll();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        productRepository.deleteAll();
+    }
+
+    @Test
+    public void adjustQuantity_ConcurrentSales_NeverOversell() throws Exception {
+        Long id = saveProduct(100);
+
+        int sold = runConcurrently(400, i -> adjust(id, -1));
+
+        Product product = productRepository.findById(id).orElseThrow();
+        Assertions.assertEquals(100, sold);
+        Assertions.assertEquals(0, product.getQuantity());
+        Assertions.assertFalse(product.getInStock());
+    }
+
+    @Test
+    public void adjustQuantity_ConcurrentSalesAndSupplies_LoseNoUpdates() throws Exception {
+        Long id = saveProduct(3000);
+
+        int applied = runConcurrently(2000, i -> adjust(id, i % 2 == 0 ? -3 : 2));
+
+        Product product = productRepository.findById(id).orElseThrow();
+        Assertions.assertEquals(2000, applied);
+        Assertions.assertEquals(3000 - 1000 * 3 + 1000 * 2, product.getQuantity());
+        Assertions.assertTrue(product.getInStock());
+    }
+
+    private boolean adjust(Long id, int delta) {
+        Integer updated = transactionTemplate.execute(status -> productRepository.adjustQuantity(id, delta));
+        return updated != null && updated == 1;
+    }
+
+    private Long saveProduct(int quantity) {
+        Product product = new Product();
+        product.setName("Товар");
+        product.setPrice(100.0);
+        product.setQuantity(quantity);
+        product.setInStock(quantity > 0);
+        return productRepository.save(product).getId();
+    }
+
+    private int runConcurrently(int operations, Operation operation) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>(operations);
+            for (int i = 0; i < operations; i++) {
+                int index = i;
+                Callable<Boolean> task = () -> {
+                    start.await();
+                    return operation.apply(index);
+                };
+                results.add(executor.submit(task));
+            }
+            start.countDown();
+
+            int succeeded = 0;
+            for (Future<Boolean> result : results) {
+                if (result.get(30, TimeUnit.SECONDS)) succeeded++;
+            }
+            return succeeded;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private interface Operation {
+        boolean apply(int index);
+    }
+}
@@ -0,0 +1,73 @@
+package ru.interview.response;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ResponseBuilderTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    public void ok_Collection_WritesResponseAndCount() throws Exception {
+        JsonNode json = write(ResponseBuilder.ok(List.of("a", "b"), "/path"));
+
+        assertEquals(200, json.get("status").asInt());
+        assertEquals(2, json.get("response").size());
+        assertEquals(2, json.get("count").asInt());
+        assertFalse(json.has("error"));
+        assertFalse(json.has("path"));
+    }
+
+    @Test
+    public void ok_Object_WritesResponseWithoutCount() throws Exception {
+        JsonNode json = write(ResponseBuilder.ok(Map.of("id", 1), "/path"));
+
+        assertEquals(1, json.get("response").get("id").asInt());
+        assertFalse(json.has("count"));
+    }
+
+    @Test
+    public void error_WritesErrorTimestampAndPath() throws Exception {
+        JsonNode json = write(ResponseBuilder.error(HttpStatus.NOT_FOUND, new RuntimeException("Not here"), "/path"));
+
+        assertEquals(404, json.get("status").asInt());
+        assertEquals("Not here", json.get("error").asText());
+        assertEquals("/path", json.get("path").asText());
+        assertTrue(json.has("timestamp"));
+        assertFalse(json.has("response"));
+    }
+
+    @Test
+    public void build_ClientErrorWithoutMessage_UsesReasonPhrase() throws Exception {
+        JsonNode json = write(ResponseBuilder.build(HttpStatus.BAD_REQUEST, null, "/path"));
+
+        assertEquals("Bad Request", json.get("error").asText());
+    }
+
+    @Test
+    public void cursor_FullPage_WritesCursorOfLastItem() throws Exception {
+        JsonNode json = write(ResponseBuilder.cursor(List.of(1L, 2L), 2, id -> id, "/path"));
+
+        assertEquals(2, json.get("count").asInt());
+        assertEquals(2, json.get("cursor").asLong());
+    }
+
+    @Test
+    public void cursor_LastPage_OmitsCursor() throws Exception {
+        JsonNode json = write(ResponseBuilder.cursor(List.of(1L), 2, id -> id, "/path"));
+
+        assertFalse(json.has("cursor"));
+    }
+
+    private JsonNode write(ResponseEntity<?> entity) throws Exception {
+        return objectMapper.readTree(objectMapper.writeValueAsBytes(entity.getBody()));
+    }
+}
@@ -0,0 +1,246 @@
+package ru.interview.search;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.interview.dto.ProductSearchCursor;
+import ru.interview.dto.ProductView;
+import ru.interview.entity.ChangeEvent;
+import ru.interview.entity.Product;
+import ru.interview.repository.CatalogVersionRepository;
+import ru.interview.repository.ChangeEventRepository;
+import ru.interview.repository.ChangeFeedHeadRepository;
+import ru.interview.repository.ProductRepository;
+import ru.interview.service.ChangeFeedService;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+// The index reads committed rows in its own transactions, so the test does not wrap itself in one
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class ProductIndexTest {
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private ChangeEventRepository changeEventRepository;
+
+    @Autowired
+    private ChangeFeedHeadRepository changeFeedHeadRepository;
+
+    @Autowired
+    private CatalogVersionRepository catalogVersionRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private TransactionTemplate transactionTemplate;
+
+    private ChangeFeedService changeFeedService;
+
+    private ProductIndex productIndex;
+
+    @BeforeEach
+    public void setUp() {
+        tearDown();
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        changeFeedService = new ChangeFeedService(changeEventRepository, changeFeedHeadRepository, catalogVersionRepository, new ObjectMapper(),
+                transactionManager, Duration.ofMillis(200), Duration.ofDays(7), 500);
+        productIndex = new ProductIndex(productRepository, changeFeedService, transactionManager, Duration.ofSeconds(1));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        productRepository.deleteAll();
+        changeEventRepository.deleteAll();
+        changeFeedHeadRepository.deleteAll();
+        catalogVersionRepository.deleteAll();
+    }
+
+    @Test
+    public void search_FiltersAndSortsLikeTheDatabase() {
+        product("Чайник", 30.0, 5);
+        product("Чайник большой", 10.0, 0);
+        product("Кофеварка", 20.0, 2);
+        product("Чашка", null, 1);
+        Assertions.assertFalse(searchable());
+        productIndex.load();
+
+        Assertions.assertEquals(List.of("Чайник большой", "Чайник"),
+                names(productIndex.search("ЧАЙ", null, null, null, null, PageRequest.of(0, 10, Sort.by("price", "id")), ProductView.FIELDS)));
+        Assertions.assertEquals(List.of("Кофеварка", "Чайник"),
+                names(productIndex.search(null, 15.0, null, true, null, PageRequest.of(0, 10, Sort.by("name")), ProductView.FIELDS)));
+        Assertions.assertEquals(Arrays.asList(10.0, 20.0, 30.0, null),
+                productIndex.search(null, null, null, null, null, PageRequest.of(0, 10, Sort.by("price")), List.of("price"))
+                        .map(ProductView::getPrice).getContent());
+        Assertions.assertEquals(2, productIndex.count("чай", null, null, null));
+        Assertions.assertFalse(productIndex.canSearch(PageRequest.of(0, 10, Sort.by("quantity")), 0));
+    }
+
+    @Test
+    public void search_PagesByOffsetOrCursor() {
+        for (int i = 0; i < 5; i++) {
+            product("Товар " + i, 10.0 * (i % 2), 1);
+        }
+        productIndex.load();
+        PageRequest firstPage = PageRequest.of(0, 2, Sort.by("price", "id"));
+
+        Slice<ProductView> first = productIndex.search(null, null, null, null, null, firstPage, ProductView.FIELDS);
+        Slice<ProductView> second = productIndex.search(null, null, null, null,
+                ProductSearchCursor.after("price", first.getContent().get(1), true), firstPage, ProductView.FIELDS);
+        Slice<ProductView> byOffset = productIndex.search(null, null, null, null, null, firstPage.next(), ProductView.FIELDS);
+        Slice<ProductView> last = productIndex.search(null, null, null, null, null, PageRequest.of(2, 2, Sort.by("price", "id")), ProductView.FIELDS);
+
+        Assertions.assertTrue(first.hasNext());
+        Assertions.assertEquals(List.of("Товар 0", "Товар 2"), names(first));
+        Assertions.assertEquals(List.of("Товар 4", "Товар 1"), names(second));
+        Assertions.assertEquals(names(second), names(byOffset));
+        Assertions.assertEquals(List.of("Товар 3"), names(last));
+        Assertions.assertFalse(last.hasNext());
+    }
+
+    @Test
+    public void catchUp_AppliesSequencedChangesAndRemovals() {
+        Product kettle = product("Чайник", 30.0, 5);
+        Product cup = product("Чашка", 10.0, 1);
+        changeFeedService.tick();
+        productIndex.load();
+        Assertions.assertTrue(searchable());
+
+        kettle.setPrice(5.0);
+        save(kettle);
+        delete(cup);
+        product("Заварник", 15.0, 3);
+        changeFeedService.tick();
+        Assertions.assertFalse(searchable());
+        productIndex.catchUp();
+        Assertions.assertTrue(searchable());
+
+        Slice<ProductView> products = productIndex.search(null, null, null, null, null, null, List.of("name", "price"));
+        Assertions.assertEquals(List.of(ProductView.builder().name("Чайник").price(5.0).build(),
+                ProductView.builder().name("Заварник").price(15.0).build()), products.getContent());
+        Assertions.assertEquals(2, productIndex.size());
+    }
+
+    @Test
+    public void catchUp_KeepsEveryOrderSorted() {
+        Product kettle = product("Чайник", 30.0, 5);
+        Product cup = product("Чашка", 10.0, 1);
+        product("Кофеварка", 20.0, 2);
+        productIndex.load();
+
+        kettle.setPrice(5.0);
+        kettle.setName("Бульотка");
+        save(kettle);
+        delete(cup);
+        product("Заварник", 15.0, 3);
+        changeFeedService.tick();
+        productIndex.catchUp();
+
+        Assertions.assertEquals(List.of("Бульотка", "Заварник", "Кофеварка"),
+                names(productIndex.search(null, null, null, null, null, PageRequest.of(0, 10, Sort.by("price")), ProductView.FIELDS)));
+        Assertions.assertEquals(List.of("Бульотка", "Заварник", "Кофеварка"),
+                names(productIndex.search(null, null, null, null, null, PageRequest.of(0, 10, Sort.by("name")), ProductView.FIELDS)));
+        Assertions.assertEquals(List.of("Бульотка", "Кофеварка", "Заварник"),
+                names(productIndex.search(null, null, null, null, null, PageRequest.of(0, 10, Sort.by("id")), ProductView.FIELDS)));
+    }
+
+    @Test
+    public void catchUp_ReusesSlotsOfRemovedProducts() {
+        product("Чайник", 30.0, 5);
+        productIndex.load();
+
+        for (int i = 0; i < 10; i++) {
+            Product cup = product("Чашка " + i, 10.0, 1);
+            Product saucer = product("Блюдце " + i, 5.0, 1);
+            changeFeedService.tick();
+            productIndex.catchUp();
+            delete(cup);
+            delete(saucer);
+            changeFeedService.tick();
+            productIndex.catchUp();
+        }
+
+        Assertions.assertTrue(searchable());
+        Assertions.assertEquals(1, productIndex.size());
+        Assertions.assertEquals(3, productIndex.usedSlots());
+        Assertions.assertEquals(List.of("Чайник"),
+                names(productIndex.search(null, null, null, null, null, PageRequest.of(0, 10, Sort.by("name")), ProductView.FIELDS)));
+    }
+
+    @Test
+    public void awaitSearchable_WaitsForCatchUpWithoutQueueingBehindIt() throws Exception {
+        Product kettle = product("Чайник", 30.0, 5);
+        productIndex.load();
+        kettle.setPrice(5.0);
+        save(kettle);
+        changeFeedService.tick();
+        long version = changeFeedService.readCatalogVersion();
+        PageRequest byName = PageRequest.of(0, 10, Sort.by("name", "id"));
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            // A long load or catch-up holds the index monitor, the wait must still end at its deadline
+            synchronized (productIndex) {
+                Future<Boolean> blocked = executor.submit(() -> productIndex.awaitSearchable(byName, version));
+                Assertions.assertFalse(blocked.get(5, TimeUnit.SECONDS));
+            }
+
+            Future<Boolean> waiting = executor.submit(() -> productIndex.awaitSearchable(byName, version));
+            productIndex.catchUp();
+            Assertions.assertTrue(waiting.get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private boolean searchable() {
+        return productIndex.canSearch(null, changeFeedService.readCatalogVersion());
+    }
+
+    private Product product(String name, Double price, int quantity) {
+        Product product = new Product();
+        product.setName(name);
+        product.setPrice(price);
+        product.setQuantity(quantity);
+        product.setInStock(quantity > 0);
+        return save(product);
+    }
+
+    private Product save(Product product) {
+        return transactionTemplate.execute(status -> {
+            Product saved = productRepository.save(product);
+            changeFeedService.append(ChangeEvent.PRODUCT, saved.getId(), ChangeEvent.Type.UPDATED, null);
+            return saved;
+        });
+    }
+
+    private void delete(Product product) {
+        transactionTemplate.executeWithoutResult(status -> {
+            productRepository.deleteById(product.getId());
+            changeFeedService.append(ChangeEvent.PRODUCT, product.getId(), ChangeEvent.Type.DELETED, null);
+        });
+    }
+
+    private static List<String> names(Slice<ProductView> products) {
+        return products.stream().map(ProductView::getName).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,39 @@
+package ru.interview.search;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TrigramsTest {
+
+    @Test
+    public void of_PadsEachWordLikePgTrgm() {
+        assertEquals(Set.of("  c", " ca", "cat", "at "), Trigrams.of("Cat"));
+        assertEquals(Set.of("  a", " a ", "  b", " b "), Trigrams.of("a, b"));
+    }
+
+    @Test
+    public void of_WhenTextIsEmpty_ReturnsNoTrigrams() {
+        assertTrue(Trigrams.of(null).isEmpty());
+        assertTrue(Trigrams.of(" - ").isEmpty());
+    }
+
+    @Test
+    public void similarity_IsOneForEqualTextAndZeroForDisjointText() {
+        assertEquals(1.0, Trigrams.similarity("Товар", "товар"));
+        assertEquals(0.0, Trigrams.similarity("abc", "xyz"));
+        assertEquals(0.0, Trigrams.similarity("abc", null));
+    }
+
+    @Test
+    public void similarity_RanksCloserNamesHigher() {
+        double exact = Trigrams.similarity("Чайник", "чайник");
+        double longer = Trigrams.similarity("Чайник электрический", "чайник");
+        double unrelated = Trigrams.similarity("Утюг", "чайник");
+
+        assertTrue(exact > longer);
+        assertTrue(longer > unrelated);
+    }
+}
@@ -0,0 +1,136 @@
+package ru.interview.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.interview.entity.ChangeEvent;
+import ru.interview.repository.CatalogVersionRepository;
+import ru.interview.repository.ChangeEventRepository;
+import ru.interview.repository.ChangeFeedHeadRepository;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+// Events are sequenced only once their transaction has committed, so the test does not wrap itself in one
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class ChangeFeedServiceTest {
+
+    @Autowired
+    private ChangeEventRepository changeEventRepository;
+
+    @Autowired
+    private ChangeFeedHeadRepository changeFeedHeadRepository;
+
+    @Autowired
+    private CatalogVersionRepository catalogVersionRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private TransactionTemplate transactionTemplate;
+
+    private ChangeFeedService changeFeedService;
+
+    @BeforeEach
+    public void setUp() {
+        changeEventRepository.deleteAll();
+        changeFeedHeadRepository.deleteAll();
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        changeFeedService = new ChangeFeedService(changeEventRepository, changeFeedHeadRepository, catalogVersionRepository, new ObjectMapper(),
+                transactionManager, Duration.ofMillis(200), Duration.ofDays(7), 2);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        changeEventRepository.deleteAll();
+        changeFeedHeadRepository.deleteAll();
+        catalogVersionRepository.deleteAll();
+    }
+
+    @Test
+    public void sequence_NumbersCommittedEventsInBatchesAndContinuesFromTheHead() {
+        append(ChangeEvent.PRODUCT, 1L, ChangeEvent.Type.CREATED);
+        append(ChangeEvent.PRODUCT_SALE, 7L, ChangeEvent.Type.CREATED);
+        append(ChangeEvent.PRODUCT, 1L, ChangeEvent.Type.UPDATED);
+        Assertions.assertTrue(changeFeedService.getChangesAfter(0, null, 10).isEmpty());
+
+        Assertions.assertEquals(2, changeFeedService.sequence());
+        Assertions.assertEquals(1, changeFeedService.sequence());
+        Assertions.assertEquals(0, changeFeedService.sequence());
+        append(ChangeEvent.PRODUCT, 1L, ChangeEvent.Type.DELETED);
+        changeFeedService.tick();
+        Assertions.assertEquals(4, changeFeedService.getPosition());
+
+        List<ChangeEvent> changes = changeFeedService.getChangesAfter(0, null, 10);
+        Assertions.assertEquals(List.of(1L, 2L, 3L, 4L), positions(changes));
+        Assertions.assertEquals(List.of(ChangeEvent.Type.CREATED, ChangeEvent.Type.CREATED,
+                ChangeEvent.Type.UPDATED, ChangeEvent.Type.DELETED),
+                changes.stream().map(ChangeEvent::getType).collect(Collectors.toList()));
+        Assertions.assertEquals("{\"id\":7}", changes.get(1).getPayload());
+        Assertions.assertNull(changes.get(3).getPayload());
+        Assertions.assertEquals(List.of(3L, 4L), positions(changeFeedService.getChangesAfter(1, ChangeEvent.PRODUCT, 10)));
+        Assertions.assertEquals(List.of(2L), positions(changeFeedService.getChangesAfter(1, null, 1)));
+    }
+
+    @Test
+    public void onChangesAfter_RunsOnceWhenAChangePastTheOffsetIsSequenced() {
+        AtomicInteger woken = new AtomicInteger();
+        AtomicInteger cancelled = new AtomicInteger();
+        changeFeedService.onChangesAfter(0, woken::incrementAndGet);
+        changeFeedService.onChangesAfter(0, cancelled::incrementAndGet).run();
+
+        changeFeedService.tick();
+        Assertions.assertEquals(0, woken.get());
+        append(ChangeEvent.PRODUCT, 1L, ChangeEvent.Type.CREATED);
+        changeFeedService.tick();
+        changeFeedService.tick();
+        Assertions.assertEquals(1, woken.get());
+        Assertions.assertEquals(0, cancelled.get());
+
+        changeFeedService.onChangesAfter(0, woken::incrementAndGet);
+        Assertions.assertEquals(2, woken.get());
+        changeFeedService.onChangesAfter(1, woken::incrementAndGet);
+        Assertions.assertEquals(2, woken.get());
+    }
+
+    @Test
+    public void append_BumpsCatalogVersionOncePerTransactionChangingProducts() {
+        append(ChangeEvent.PRODUCT, 1L, ChangeEvent.Type.CREATED);
+        transactionTemplate.executeWithoutResult(status -> {
+            changeFeedService.append(ChangeEvent.PRODUCT, 1L, ChangeEvent.Type.UPDATED, null);
+            changeFeedService.append(ChangeEvent.PRODUCT_SALE, 7L, ChangeEvent.Type.CREATED, null);
+            changeFeedService.append(ChangeEvent.PRODUCT, 2L, ChangeEvent.Type.UPDATED, null);
+        });
+        Assertions.assertEquals(2, changeFeedService.readCatalogVersion());
+
+        append(ChangeEvent.PRODUCT_SALE, 7L, ChangeEvent.Type.UPDATED);
+        append(ChangeEvent.PRODUCT_SUPPLY, 8L, ChangeEvent.Type.CREATED);
+        Assertions.assertEquals(2, changeFeedService.readCatalogVersion());
+        Assertions.assertTrue(changeFeedService.hasUnsequenced(ChangeEvent.PRODUCT));
+        Assertions.assertEquals(2, changeFeedService.sequence());
+        Assertions.assertEquals(2, changeFeedService.sequence());
+        Assertions.assertEquals(2, changeFeedService.sequence());
+        Assertions.assertFalse(changeFeedService.hasUnsequenced(ChangeEvent.PRODUCT));
+    }
+
+    private void append(String entity, Long entityId, ChangeEvent.Type type) {
+        Object payload = type == ChangeEvent.Type.DELETED ? null : Map.of("id", entityId);
+        transactionTemplate.executeWithoutResult(status -> changeFeedService.append(entity, entityId, type, payload));
+    }
+
+    private static List<Long> positions(List<ChangeEvent> changes) {
+        return changes.stream().map(ChangeEvent::getPosition).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,166 @@
+package ru.interview.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import ru.interview.entity.ChangeEvent;
+import ru.interview.entity.Product;
+import ru.interview.entity.ProductSale;
+import ru.interview.exception.ProductNotFoundException;
+import ru.interview.exception.ProductValidationException;
+import ru.interview.repository.ProductSaleRepository;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+public class ProductSaleServiceTest {
+
+    @Mock
+    private ProductSaleRepository productSaleRepository;
+
+    @Mock
+    private ProductService productService;
+
+    @Mock
+    private ProductSaleAnalyticsService productSaleAnalyticsService;
+
+    @Mock
+    private ChangeFeedService changeFeedService;
+
+    @Mock
+    private Validator validator;
+
+    @InjectMocks
+    private ProductSaleService productSaleService;
+
+    @BeforeEach
+    public void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(productSaleRepository.saveAll(anyList())).thenAnswer(invocation -> invocation.getArgument(0));
+    }
+
+    @Test
+    public void addProductSales_AdjustsStockOnceWithQuantitiesSummedPerProduct() {
+        ProductSale sale1 = productSale(1L, 5);
+        ProductSale sale2 = productSale(2L, 3);
+        ProductSale sale3 = productSale(1L, 1);
+        when(validator.validate(any(ProductSale.class))).thenReturn(Collections.emptySet());
+        when(productService.adjustQuantities(Map.of(1L, -6, 2L, -3))).thenReturn(Map.of(1L, product(1L), 2L, product(2L)));
+
+        List<ProductSale> sales = productSaleService.addProductSales(List.of(sale1, sale2, sale3));
+
+        assertEquals(3, sales.size());
+        assertEquals("Товар1", sales.get(2).getProduct().getName());
+        assertNotNull(sales.get(0).getSoldAt());
+        verify(productService, times(1)).adjustQuantities(Map.of(1L, -6, 2L, -3));
+        verify(productSaleAnalyticsService, times(1)).recordSales(sales);
+        verify(productSaleRepository, times(1)).saveAll(anyList());
+        verify(changeFeedService, times(3)).append(eq(ChangeEvent.PRODUCT_SALE), any(), eq(ChangeEvent.Type.CREATED), any());
+    }
+
+    @Test
+    public void addProductSales_InvalidLine_ThrowsProductValidationExceptionWithoutSaving() {
+        ProductSale sale1 = productSale(1L, 5);
+        ProductSale sale2 = productSale(null, 3);
+        when(validator.validate(any(ProductSale.class))).thenReturn(Collections.emptySet());
+
+        ProductValidationException exception = assertThrows(ProductValidationException.class,
+                () -> productSaleService.addProductSales(List.of(sale1, sale2)));
+
+        assertTrue(exception.getMessage().startsWith("[1].product.id"));
+        verify(productSaleRepository, never()).saveAll(anyList());
+    }
+
+    @Test
+    public void addProductSales_ConstraintViolation_ThrowsProductValidationException() {
+        ProductSale sale = productSale(1L, 0);
+        Set<ConstraintViolation<ProductSale>> violations = Set.of(violation());
+        when(validator.validate(any(ProductSale.class))).thenReturn(violations);
+
+        assertThrows(ProductValidationException.class, () -> productSaleService.addProductSales(List.of(sale)));
+        verify(productSaleRepository, never()).saveAll(anyList());
+    }
+
+    @Test
+    public void addProductSales_MissingProduct_ThrowsProductNotFoundException() {
+        ProductSale sale = productSale(1L, 5);
+        when(validator.validate(any(ProductSale.class))).thenReturn(Collections.emptySet());
+        when(productService.adjustQuantities(Map.of(1L, -5))).thenThrow(new ProductNotFoundException("Products with ids [1] not found"));
+
+        assertThrows(ProductNotFoundException.class, () -> productSaleService.addProductSales(List.of(sale)));
+        verify(productSaleRepository, never()).saveAll(anyList());
+    }
+
+    @Test
+    public void updateProductSale_ChangedQuantity_AdjustsStockByDifference() {
+        LocalDateTime soldAt = LocalDateTime.of(2024, 3, 1, 12, 0);
+        ProductSale existing = productSale(1L, 5);
+        existing.setId(10L);
+        existing.setSoldAt(soldAt);
+        ProductSale update = new ProductSale();
+        update.setId(10L);
+        update.setQuantity(2);
+        when(productSaleRepository.findById(10L)).thenReturn(Optional.of(existing));
+        when(validator.validate(any(ProductSale.class))).thenReturn(Collections.emptySet());
+        when(productService.adjustQuantities(Map.of(1L, 3))).thenReturn(Map.of(1L, product(1L)));
+        when(productSaleRepository.save(any(ProductSale.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        ProductSale result = productSaleService.updateProductSale(update);
+
+        assertEquals(2, result.getQuantity());
+        verify(productService, times(1)).adjustQuantities(Map.of(1L, 3));
+        verify(productSaleAnalyticsService, times(1)).recordChange(1L, soldAt, -5, 100.0);
+        verify(productSaleAnalyticsService, times(1)).recordChange(1L, soldAt, 2, 100.0);
+    }
+
+    @Test
+    public void deleteProductSale_ReturnsQuantityToStock() {
+        LocalDateTime soldAt = LocalDateTime.of(2024, 3, 1, 12, 0);
+        ProductSale existing = productSale(1L, 5);
+        existing.setId(10L);
+        existing.setSoldAt(soldAt);
+        when(productSaleRepository.findById(10L)).thenReturn(Optional.of(existing));
+
+        productSaleService.deleteProductSale(10L);
+
+        verify(productService, times(1)).adjustQuantity(1L, 5);
+        verify(productSaleAnalyticsService, times(1)).recordChange(1L, soldAt, -5, 100.0);
+        verify(productSaleRepository, times(1)).delete(existing);
+    }
+
+    private static ProductSale productSale(Long productId, int quantity) {
+        Product product = new Product();
+        product.setId(productId);
+        ProductSale productSale = new ProductSale();
+        productSale.setDocumentName("Документ");
+        productSale.setProduct(product);
+        productSale.setQuantity(quantity);
+        productSale.setPurchasePrice(100.0);
+        return productSale;
+    }
+
+    private static Product product(Long id) {
+        Product product = new Product();
+        product.setId(id);
+        product.setName("Товар" + id);
+        return product;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> ConstraintViolation<T> violation() {
+        return mock(ConstraintViolation.class);
+    }
+}
@@ -2,27 +2,45 @@ package ru.interview.service;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageImpl;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.util.unit.DataSize;
+import ru.interview.cache.ProductCache;
+import ru.interview.cache.ProductSearchCache;
+import ru.interview.dto.ProductImportResult;
+import ru.interview.dto.ProductSearchCursor;
+import ru.interview.dto.ProductSearchPage;
+import ru.interview.dto.ProductView;
+import ru.interview.entity.ChangeEvent;
 import ru.interview.entity.Product;
+import ru.interview.event.ProductChangedEvent;
 import ru.interview.exception.ProductNotFoundException;
 import ru.interview.exception.ProductValidationException;
 import ru.interview.repository.ProductRepository;
+import ru.interview.search.ProductIndex;
 
+import javax.persistence.EntityManager;
 import javax.validation.ConstraintViolation;
 import javax.validation.Validator;
+import java.time.Duration;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -34,26 +52,58 @@ public class ProductServiceTest {
     @Mock
     private Validator validator;
 
-    @InjectMocks
+    @Mock
+    private EntityManager entityManager;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Mock
+    private ChangeFeedService changeFeedService;
+
+    private ProductCache productCache;
+
+    private ProductSearchCache productSearchCache;
+
     private ProductService productService;
 
     @BeforeEach
     public void setUp() {
         MockitoAnnotations.openMocks(this);
+        productCache = new ProductCache(100, Duration.ofMinutes(1));
+        productSearchCache = new ProductSearchCache(DataSize.ofMegabytes(1), Duration.ofMinutes(1));
+        productService = new ProductService(productRepository, validator, entityManager, productCache,
+                productSearchCache, eventPublisher, changeFeedService, transactionManager, Optional.empty(), 2);
     }
 
     @Test
-    public void getAllProducts_ReturnsProductList() {
-        Product product1 = new Product();
-        Product product2 = new Product();
-        when(productRepository.findAll()).thenReturn(List.of(product1, product2));
+    public void getProductsAfter_ReturnsNextPage() {
+        ProductView product1 = ProductView.builder().id(1L).build();
+        ProductView product2 = ProductView.builder().id(2L).build();
+        when(productRepository.findViews(anySpecification(), eq(ProductView.FIELDS), eq(PageRequest.of(0, 2, Sort.by("id")))))
+                .thenReturn(List.of(product1, product2));
 
-        List<Product> products = productService.getAllProducts();
+        List<ProductView> products = productService.getProductsAfter(null, 2, ProductView.FIELDS);
         assertEquals(2, products.size());
         assertTrue(products.contains(product1));
         assertTrue(products.contains(product2));
     }
 
+    @Test
+    public void getProductsAfter_WhenReplicaIsBehind_ReadsAgainOnThePrimary() {
+        ProductView product = ProductView.builder().id(1L).build();
+        when(productRepository.findViews(anySpecification(), eq(ProductView.FIELDS), eq(PageRequest.of(0, 2, Sort.by("id")))))
+                .thenReturn(List.of(product));
+        when(changeFeedService.readCatalogVersion()).thenReturn(5L, 4L);
+
+        assertEquals(List.of(product), productService.getProductsAfter(null, 2, ProductView.FIELDS));
+        verify(changeFeedService, times(2)).readCatalogVersion();
+        verify(productRepository, times(1)).findViews(anySpecification(), anyList(), any(Pageable.class));
+    }
+
     @Test
     public void getProductById_WhenProductExists_ReturnsProduct() {
         Product product = new Product();
@@ -63,6 +113,90 @@ public class ProductServiceTest {
         assertEquals(product, foundProduct);
     }
 
+    @Test
+    public void getProductById_WhenCalledTwice_LoadsProductOnce() {
+        Product product = new Product();
+        product.setId(1L);
+        when(productRepository.findById(1L)).thenReturn(Optional.of(product));
+
+        Product first = productService.getProductById(1L);
+        first.setName("Изменённый");
+        Product second = productService.getProductById(1L);
+
+        verify(productRepository, times(1)).findById(1L);
+        assertEquals(product, second);
+    }
+
+    @Test
+    public void adjustQuantity_AppliesDeltaWithConditionalUpdate() {
+        Product product = product(1L, 5);
+        when(productRepository.adjustQuantity(1L, 5)).thenReturn(1);
+        when(productRepository.findAllById(Set.of(1L))).thenReturn(List.of(product));
+
+        Product adjusted = productService.adjustQuantity(1L, 5);
+
+        assertEquals(product, adjusted);
+        verify(productRepository, times(1)).adjustQuantity(1L, 5);
+        verify(eventPublisher, times(1)).publishEvent(new ProductChangedEvent(1L));
+    }
+
+    @Test
+    public void adjustQuantity_NotEnoughStock_ThrowsProductValidationException() {
+        Product product = product(1L, 2);
+        when(productRepository.adjustQuantity(1L, -3)).thenReturn(0);
+        when(productRepository.findAllById(Set.of(1L))).thenReturn(List.of(product));
+
+        ProductValidationException exception = assertThrows(ProductValidationException.class,
+                () -> productService.adjustQuantity(1L, -3));
+        assertTrue(exception.getMessage().contains("2 available, 3 requested"));
+        verify(eventPublisher, never()).publishEvent(any());
+    }
+
+    @Test
+    public void adjustQuantities_MissingProduct_ThrowsProductNotFoundException() {
+        when(productRepository.adjustQuantity(1L, 1)).thenReturn(1);
+        when(productRepository.adjustQuantity(2L, 1)).thenReturn(0);
+        when(productRepository.findAllById(any())).thenReturn(List.of(product(1L, 1)));
+
+        assertThrows(ProductNotFoundException.class, () -> productService.adjustQuantities(Map.of(1L, 1, 2L, 1)));
+    }
+
+    @Test
+    public void adjustQuantities_ZeroDelta_OnlyLocksProduct() {
+        Product product1 = product(1L, 4);
+        Product product2 = product(2L, 7);
+        when(productRepository.findForUpdate(1L)).thenReturn(Optional.of(product1));
+        when(productRepository.adjustQuantity(2L, -2)).thenReturn(1);
+        when(productRepository.findAllById(any())).thenReturn(List.of(product1, product2));
+
+        Map<Long, Product> products = productService.adjustQuantities(Map.of(1L, 0, 2L, -2));
+
+        assertEquals(Map.of(1L, product1, 2L, product2), products);
+        verify(productRepository, never()).adjustQuantity(eq(1L), anyInt());
+        verify(changeFeedService, times(1)).append(ChangeEvent.PRODUCT, 2L, ChangeEvent.Type.UPDATED, product2);
+        verify(changeFeedService, never()).append(eq(ChangeEvent.PRODUCT), eq(1L), any(), any());
+        verify(eventPublisher, times(1)).publishEvent(new ProductChangedEvent(2L));
+        verify(eventPublisher, never()).publishEvent(new ProductChangedEvent(1L));
+    }
+
+    @Test
+    public void adjustQuantity_EvictsCachedProduct() {
+        Product product = product(1L, 0);
+        when(productRepository.findById(1L)).thenReturn(Optional.of(product));
+        when(productRepository.adjustQuantity(1L, 1)).thenReturn(1);
+        when(productRepository.findAllById(Set.of(1L))).thenReturn(List.of(product));
+        doAnswer(invocation -> {
+            productCache.onProductChanged(invocation.getArgument(0));
+            return null;
+        }).when(eventPublisher).publishEvent(any(ProductChangedEvent.class));
+
+        productService.getProductById(1L);
+        productService.adjustQuantity(1L, 1);
+        productService.getProductById(1L);
+
+        verify(productRepository, times(2)).findById(1L);
+    }
+
     @Test
     public void getProductById_WhenProductDoesNotExist_ThrowsProductNotFoundException() {
         when(productRepository.findById(anyLong())).thenReturn(Optional.empty());
@@ -80,15 +214,30 @@ public class ProductServiceTest {
         Product savedProduct = productService.addProduct(product);
         verify(productRepository, times(1)).save(any(Product.class));
         assertEquals(product, savedProduct);
+        verify(changeFeedService, times(1)).append(ChangeEvent.PRODUCT, null, ChangeEvent.Type.CREATED, product);
+    }
+
+    @Test
+    public void addProduct_WithQuantity_DerivesInStock() {
+        Product product = new Product();
+        product.setName("Товар");
+        product.setQuantity(3);
+        product.setInStock(false);
+        when(validator.validate(any(Product.class))).thenReturn(Collections.emptySet());
+        when(productRepository.save(any(Product.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        Product savedProduct = productService.addProduct(product);
+        assertTrue(savedProduct.getInStock());
     }
 
     @Test
     public void addProduct_InvalidProduct_ThrowsProductValidationException() {
         Product product = new Product();
-        Set<ConstraintViolation<Product>> violations = Set.of(mock(ConstraintViolation.class));
+        Set<ConstraintViolation<Product>> violations = Set.of(violation());
         when(validator.validate(any(Product.class))).thenReturn(violations);
 
         assertThrows(ProductValidationException.class, () -> productService.addProduct(product));
+        verifyNoInteractions(changeFeedService);
     }
 
     @Test
@@ -114,12 +263,27 @@ public class ProductServiceTest {
         updatedProduct.setId(1L);
         updatedProduct.setPrice(-100.0);
         when(productRepository.findById(anyLong())).thenReturn(Optional.of(existingProduct));
-        Set<ConstraintViolation<Product>> violations = Set.of(mock(ConstraintViolation.class));
+        Set<ConstraintViolation<Product>> violations = Set.of(violation());
         when(validator.validate(any(Product.class))).thenReturn(violations);
 
         assertThrows(ProductValidationException.class, () -> productService.updateProduct(updatedProduct));
     }
 
+    @Test
+    public void updateProduct_ChangedQuantity_ThrowsProductValidationException() {
+        Product existingProduct = new Product();
+        existingProduct.setQuantity(5);
+        Product updatedProduct = new Product();
+        updatedProduct.setId(1L);
+        updatedProduct.setQuantity(50);
+        when(productRepository.findById(anyLong())).thenReturn(Optional.of(existingProduct));
+
+        assertThrows(ProductValidationException.class, () -> productService.updateProduct(updatedProduct));
+        assertEquals(5, existingProduct.getQuantity());
+        verify(productRepository, never()).save(any(Product.class));
+        verifyNoInteractions(changeFeedService);
+    }
+
     @Test
     public void updateProduct_ProductNotFound_ThrowsProductNotFoundException() {
         Product product = new Product();
@@ -149,25 +313,178 @@ public class ProductServiceTest {
 
     @Test
     public void searchProducts_ReturnsProductList() {
+        ProductView product1 = ProductView.builder().name("Товар1").price(100.0).build();
+        ProductView product2 = ProductView.builder().name("Товар2").price(200.0).build();
+        when(productRepository.findViewSlice(anySpecification(), eq(List.of("name", "price")), any(Pageable.class)))
+                .thenReturn(new SliceImpl<>(List.of(product1, product2)));
+
+        List<ProductView> products = productService.searchProducts(
+                "Товар", 50.0, 250.0, true, PageRequest.of(0, 10), List.of("name", "price")).getContent();
+
+        assertEquals(2, products.size());
+        assertTrue(products.contains(product1));
+        assertTrue(products.contains(product2));
+    }
+
+    @Test
+    public void searchProducts_SameFilters_QueriesRepositoryOnceUntilProductChanges() {
+        ProductView product = ProductView.builder().name("Товар1").build();
+        when(productRepository.findViewSlice(anySpecification(), anyList(), any(Pageable.class)))
+                .thenReturn(new SliceImpl<>(List.of(product)));
+
+        productService.searchProducts("Товар", null, null, true, PageRequest.of(0, 10), ProductView.FIELDS);
+        List<ProductView> products = productService.searchProducts("товар", null, null, true, PageRequest.of(0, 10), ProductView.FIELDS).getContent();
+        assertEquals(List.of(product), products);
+        verify(productRepository, times(1)).findViewSlice(anySpecification(), anyList(), any(Pageable.class));
+
+        productSearchCache.onProductChanged(new ProductChangedEvent(1L));
+        productService.searchProducts("Товар", null, null, true, PageRequest.of(0, 10), ProductView.FIELDS);
+        verify(productRepository, times(2)).findViewSlice(anySpecification(), anyList(), any(Pageable.class));
+    }
+
+    @Test
+    public void searchProducts_NewerCatalogVersion_QueriesRepositoryAgain() {
+        when(productRepository.findViewSlice(anySpecification(), anyList(), any(Pageable.class)))
+                .thenReturn(new SliceImpl<>(List.of()));
+        when(changeFeedService.readCatalogVersion()).thenReturn(3L);
+
+        productService.searchProducts("Товар", null, null, null, PageRequest.of(0, 10), ProductView.FIELDS);
+        productService.searchProducts("Товар", null, null, null, PageRequest.of(0, 10), ProductView.FIELDS);
+        verify(productRepository, times(1)).findViewSlice(anySpecification(), anyList(), any(Pageable.class));
+
+        when(changeFeedService.readCatalogVersion()).thenReturn(4L);
+        productService.searchProducts("Товар", null, null, null, PageRequest.of(0, 10), ProductView.FIELDS);
+        verify(productRepository, times(2)).findViewSlice(anySpecification(), anyList(), any(Pageable.class));
+    }
+
+    @Test
+    public void searchProducts_ContinuesNameCursorsOnTheSideThatIssuedThem() {
+        ProductIndex productIndex = mock(ProductIndex.class);
+        productService = new ProductService(productRepository, validator, entityManager, productCache,
+                productSearchCache, eventPublisher, changeFeedService, transactionManager, Optional.of(productIndex), 2);
+        PageRequest pageable = PageRequest.of(0, 1, Sort.by("name", "id"));
+        ProductView product = ProductView.builder().id(7L).name("Товар").build();
+        when(productIndex.canSearch(eq(pageable), anyLong())).thenReturn(true);
+        when(productIndex.search(any(), any(), any(), any(), any(), eq(pageable), anyList()))
+                .thenReturn(new SliceImpl<>(List.of(product), pageable, true));
+        when(productRepository.findViewSlice(anySpecification(), anyList(), any(Pageable.class)))
+                .thenReturn(new SliceImpl<>(List.of(product), pageable, true));
+
+        ProductSearchPage first = productService.searchProducts(null, null, null, null, null, pageable, ProductView.FIELDS);
+        assertEquals(new ProductSearchCursor("name", "Товар", 7L, true), first.getNext());
+
+        ProductSearchPage fromDatabase = productService.searchProducts(null, null, null, null,
+                new ProductSearchCursor("name", "Товар", 3L), pageable, ProductView.FIELDS);
+        assertFalse(fromDatabase.getNext().isIndexed());
+        verify(productRepository, times(1)).findViewSlice(anySpecification(), anyList(), any(Pageable.class));
+
+        when(productIndex.awaitSearchable(eq(pageable), anyLong())).thenReturn(false);
+        ProductSearchPage fallback = productService.searchProducts(null, null, null, null,
+                first.getNext(), pageable, ProductView.FIELDS);
+        assertFalse(fallback.getNext().isIndexed());
+        verify(productRepository, times(2)).findViewSlice(anySpecification(), anyList(), any(Pageable.class));
+    }
+
+    @Test
+    public void searchProducts_DifferentPage_QueriesRepositoryAgain() {
+        when(productRepository.findViewSlice(anySpecification(), anyList(), any(Pageable.class)))
+                .thenReturn(new SliceImpl<>(List.of()));
+
+        productService.searchProducts("Товар", null, null, null, PageRequest.of(0, 10), ProductView.FIELDS);
+        productService.searchProducts("Товар", null, null, null, PageRequest.of(1, 10), ProductView.FIELDS);
+        verify(productRepository, times(2)).findViewSlice(anySpecification(), anyList(), any(Pageable.class));
+    }
+
+    @Test
+    public void searchProducts_DifferentFields_QueriesRepositoryAgain() {
+        when(productRepository.findViewSlice(anySpecification(), anyList(), any(Pageable.class)))
+                .thenReturn(new SliceImpl<>(List.of()));
+
+        productService.searchProducts("Товар", null, null, null, PageRequest.of(0, 10), List.of("id"));
+        productService.searchProducts("Товар", null, null, null, PageRequest.of(0, 10), List.of("id", "name"));
+        verify(productRepository, times(2)).findViewSlice(anySpecification(), anyList(), any(Pageable.class));
+    }
+
+    @Test
+    public void countProducts_CountsOncePerFiltersUntilProductChanges() {
+        when(productRepository.count(anySpecification())).thenReturn(42L);
+
+        assertEquals(42L, productService.countProducts("Товар", null, null, true));
+        assertEquals(42L, productService.countProducts("товар", null, null, true));
+        verify(productRepository, times(1)).count(anySpecification());
+
+        productSearchCache.onProductChanged(new ProductChangedEvent(1L));
+        productService.countProducts("Товар", null, null, true);
+        verify(productRepository, times(2)).count(anySpecification());
+    }
+
+    @Test
+    public void importProducts_SavesValidProductsInBatchesAndReportsInvalidOnes() {
         Product product1 = new Product();
         product1.setName("Товар1");
-        product1.setPrice(100.0);
+        Product invalidProduct = new Product();
+        Product product2 = new Product();
+        product2.setName("Товар2");
+        Product product3 = new Product();
+        product3.setName("Товар3");
+        Set<ConstraintViolation<Product>> violations = Set.of(violation());
+        when(validator.validate(any(Product.class))).thenReturn(Collections.emptySet());
+        when(validator.validate(invalidProduct)).thenReturn(violations);
+
+        ProductImportResult result = productService.importProducts(
+                List.of(product1, invalidProduct, product2, product3).iterator());
+
+        assertEquals(3, result.getImported());
+        assertEquals(1, result.getFailures().size());
+        assertEquals(1, result.getFailures().get(0).getIndex());
+        verify(productRepository, times(2)).saveAll(anyList());
+        verify(entityManager, times(2)).flush();
+        assertEquals(0.0, product3.getPrice());
+        assertEquals(0, product3.getQuantity());
+        assertFalse(product3.getInStock());
+    }
 
+    @Test
+    public void importProducts_WhenBatchIsRejected_RetriesItsRowsOneByOne() {
+        Product product1 = new Product();
+        product1.setName("Товар1");
+        Product rejectedProduct = new Product();
+        rejectedProduct.setName("Дубликат");
         Product product2 = new Product();
         product2.setName("Товар2");
-        product2.setPrice(200.0);
+        when(validator.validate(any(Product.class))).thenReturn(Collections.emptySet());
+        when(productRepository.saveAll(anyList())).thenAnswer(invocation -> {
+            List<Product> products = invocation.getArgument(0);
+            if (products.stream().anyMatch(product -> product == rejectedProduct)) {
+                throw new DataIntegrityViolationException("duplicate key");
+            }
+            return products;
+        });
+
+        ProductImportResult result = productService.importProducts(
+                List.of(product1, rejectedProduct, product2).iterator());
+
+        assertEquals(2, result.getImported());
+        assertEquals(1, result.getFailures().size());
+        assertEquals(1, result.getFailures().get(0).getIndex());
+        assertEquals("Insert failed: duplicate key", result.getFailures().get(0).getError());
+        verify(productRepository, times(4)).saveAll(anyList());
+    }
 
-        Page<Product> page = new PageImpl<>(List.of(product1, product2));
-        when(productRepository.findByFiltersAndSort(anyString(), anyDouble(), anyDouble(), anyBoolean(), any(Pageable.class)))
-                .thenReturn(page);
-        when(productRepository.findByFilters(anyString(), anyDouble(), anyDouble(), anyBoolean()))
-                .thenReturn(page.getContent());
+    private static Product product(Long id, int quantity) {
+        Product product = new Product();
+        product.setId(id);
+        product.setQuantity(quantity);
+        product.setInStock(quantity > 0);
+        return product;
+    }
 
-        List<Product> products = productService.searchProducts(
-                "Товар", 50.0, 250.0, true, PageRequest.of(0, 10));
+    private static Specification<Product> anySpecification() {
+        return any();
+    }
 
-        assertEquals(2, products.size());
-        assertTrue(products.contains(product1));
-        assertTrue(products.contains(product2));
+    @SuppressWarnings("unchecked")
+    private static <T> ConstraintViolation<T> violation() {
+        return mock(ConstraintViolation.class);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,49 @@
+-- Планы и время выполнения /product/search для каждой комбинации фильтров.
+-- Запускать на отдельной базе после старта приложения (таблица и индексы уже созданы):
+--   psql -h localhost -U postgres -d products_db -f src/test/search-plans.sql
+
+\timing on
+
+INSERT INTO product (id, name, description, price, quantity, in_stock)
+SELECT nextval('product_seq'), 'Товар ' || md5(i::text), '', (random() * 10000)::numeric(10, 2), quantity, quantity > 0
+FROM (SELECT i, CASE WHEN random() < 0.3 THEN 1 + (random() * 100)::int ELSE 0 END AS quantity
+      FROM generate_series(1, 1000000) AS i) AS generated;
+ANALYZE product;
+
+-- name
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT * FROM product p WHERE lower(p.name) LIKE '%a1b2%' ORDER BY p.name LIMIT 20;
+
+-- minPrice + maxPrice
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT * FROM product p WHERE p.price >= 1000 AND p.price <= 1100 ORDER BY p.price LIMIT 20;
+
+-- inStock
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT * FROM product p WHERE p.in_stock = true ORDER BY p.price LIMIT 20;
+
+-- inStock + minPrice + maxPrice
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT * FROM product p WHERE p.price >= 1000 AND p.price <= 1100 AND p.in_stock = true ORDER BY p.price LIMIT 20;
+
+-- name + inStock + minPrice + maxPrice
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT * FROM product p
+WHERE lower(p.name) LIKE '%a1b2%' AND p.price >= 1000 AND p.price <= 5000 AND p.in_stock = true
+ORDER BY p.price LIMIT 20;
+
+-- name, sortBy=relevance
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT * FROM product p WHERE lower(p.name) LIKE '%a1b2%'
+ORDER BY similarity(lower(p.name), 'a1b2') DESC, p.id LIMIT 20;
+
+-- Прежний запрос с `(... OR :param IS NULL)` для сравнения, фильтр только по цене
+PREPARE catch_all(text, float8, float8, boolean) AS
+SELECT * FROM product p
+WHERE (lower(p.name) LIKE lower('%' || $1 || '%') OR $1 IS NULL)
+  AND (p.price >= $2 OR $2 IS NULL)
+  AND (p.price <= $3 OR $3 IS NULL)
+  AND (p.in_stock = $4 OR $4 IS NULL)
+ORDER BY p.price LIMIT 20;
+EXPLAIN (ANALYZE, BUFFERS) EXECUTE catch_all(NULL, 1000, 1100, NULL);
+DEALLOCATE catch_all;